@@ -0,0 +1,86 @@
+package de.beimax.talenttree;
+
+import org.openjdk.jmh.annotations.*;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Loading talent trees: SnakeYAML's loadAll building maps and lists that are compiled afterwards vs. the event based
+ * tree loader. Copies is the number of copies of the bundled data.yaml (ids are made unique). Run with -prof gc to
+ * see allocations per load (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataLoadingBenchmark {
+    /**
+     * copies of bundled data
+     */
+    @Param({"1", "100"})
+    public int copies;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = getClass().getResourceAsStream("/data.yaml")) {
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) > 0) out.write(chunk, 0, read);
+        }
+        String yaml = out.toString("UTF-8");
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < copies; i++) sb.append(i == 0 ? yaml : yaml.replace("\nid: ", "\nid: Copy" + i)).append('\n');
+        data = sb.toString().getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public List<TalentTree> loadAll() throws Exception {
+        List<TalentTree> trees = new ArrayList<>();
+        for (Object o : new Yaml().loadAll(new ByteArrayInputStream(data)))
+            if (o != null) trees.add(TalentTree.fromMap((Map<?, ?>) o));
+        return trees;
+    }
+
+    @Benchmark
+    public List<TalentTree> events() throws Exception {
+        return new TreeLoader(null).load(ByteBuffer.wrap(data));
+    }
+
+    @Benchmark
+    public List<TalentTree> eventsFiltered() throws Exception {
+        // select a single career, skip the rest
+        return new TreeLoader(TreeFilter.parse("ExplorerFringer")).load(ByteBuffer.wrap(data));
+    }
+}
@@ -0,0 +1,83 @@
+package de.beimax.talenttree;
+
+import com.itextpdf.text.pdf.BaseFont;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Startup cost of fonts in a fresh JVM: every measurement is a single shot in its own fork, so fonts have never
+ * been loaded before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class FontLoadingBenchmark {
+    /**
+     * Creating a generator used to load all six fonts eagerly
+     */
+    @Benchmark
+    public void legacyEagerFonts(Blackhole blackhole) throws Exception {
+        String[] fonts = {"/fonts/LeagueGothic-Regular.otf", "/fonts/LiberationSans-Regular.ttf",
+                "/fonts/LiberationSans-Bold.ttf", "/fonts/LiberationSansNarrow-Regular.ttf",
+                "/fonts/LiberationSansNarrow-Bold.ttf", "/fonts/EotE_Symbol-Regular_v1.otf"};
+        for (String font : fonts)
+            blackhole.consume(BaseFont.createFont(getClass().getResource(font).toString(), BaseFont.WINANSI, BaseFont.EMBEDDED));
+    }
+
+    /**
+     * Creating a generator does not load any fonts
+     */
+    @Benchmark
+    public PDFGenerator registryGenerator() throws Exception {
+        return new PDFGenerator();
+    }
+
+    /**
+     * Load all fonts through the registry
+     */
+    @Benchmark
+    public void registryAllFonts(Blackhole blackhole) throws Exception {
+        loadAll(new PDFGenerator(), blackhole);
+    }
+
+    /**
+     * Load all fonts through a second generator - fonts are shared within the JVM
+     */
+    @Benchmark
+    public void registrySecondGenerator(Blackhole blackhole) throws Exception {
+        loadAll(new PDFGenerator(), blackhole);
+        loadAll(new PDFGenerator(), blackhole);
+    }
+
+    private void loadAll(PDFGenerator generator, Blackhole blackhole) throws Exception {
+        blackhole.consume(generator.getFontHeader());
+        blackhole.consume(generator.getFontRegular());
+        blackhole.consume(generator.getFontBold());
+        blackhole.consume(generator.getFontCondensedRegular());
+        blackhole.consume(generator.getFontCondensedBold());
+        blackhole.consume(generator.getFontSymbol());
+    }
+}
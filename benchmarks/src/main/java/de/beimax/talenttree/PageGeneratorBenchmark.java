@@ -0,0 +1,132 @@
+package de.beimax.talenttree;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfWriter;
+import org.kohsuke.args4j.CmdLineParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * Building blocks of a career page (ExplorerFringer), rendered onto an open page whose output is discarded. Fitting
+ * talent texts is measured with an empty fit cache (cold, every call runs the fit loop) and a filled one (warm).
+ * parseTextProperty is covered by TextPropertyBenchmark. Run with -prof gc to see allocations per call
+ * (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageGeneratorBenchmark {
+    /**
+     * talent key of benchmarked box - long text spanning two lines
+     */
+    private static final String TALENT = "MasterStarhopper";
+
+    private PDFGenerator generator;
+
+    private PageGeneratorCareer pageGenerator;
+
+    private Document document;
+
+    private OptimizingCanvas canvas;
+
+    @Setup
+    public void setup() throws Exception {
+        generator = new PDFGenerator();
+        new CmdLineParser(generator).parseArgument("--lang", "en", "--only", "ExplorerFringer");
+        generator.setVerbose(false);
+        generator.initialize();
+
+        TalentTree tree = generator.loadTrees().get(0);
+        pageGenerator = (PageGeneratorCareer) generator.createPageGenerator(tree);
+    }
+
+    /**
+     * open new page for each iteration - pages are written to nowhere
+     */
+    @Setup(Level.Iteration)
+    public void openPage() throws Exception {
+        document = generator.createDocument();
+        PdfWriter writer = PdfWriter.getInstance(document, new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        document.open();
+        document.newPage();
+        canvas = new OptimizingCanvas(writer.getDirectContent(), OptimizingCanvas.MAX_PRECISION);
+
+        pageGenerator.setDocument(document);
+        pageGenerator.setWriter(writer);
+        pageGenerator.setCanvas(canvas);
+        pageGenerator.setTemplateCache(new TemplateCache());
+    }
+
+    @TearDown(Level.Iteration)
+    public void closePage() {
+        document.close();
+    }
+
+    @Benchmark
+    public AbstractPageGenerator.HeaderProperties parseHeaderProperty() throws Exception {
+        return pageGenerator.parseHeaderProperty(TALENT);
+    }
+
+    @Benchmark
+    public AbstractPageGenerator.HeaderProperties parseHeaderPropertyUncached() throws Exception {
+        return AbstractPageGenerator.HeaderProperties.parse(TALENT, generator.getStrings().get(TALENT + "Data"));
+    }
+
+    @Benchmark
+    public PdfContentByte addTalentCold() throws Exception {
+        generator.setFitCache(new FitCache());
+        canvas.reset();
+        pageGenerator.addTalent(2, 0, TALENT, 1, TalentCell.DEFAULT_COST);
+        return canvas.getContentByte();
+    }
+
+    @Benchmark
+    public PdfContentByte addTalentWarm() throws Exception {
+        canvas.reset();
+        pageGenerator.addTalent(2, 0, TALENT, 1, TalentCell.DEFAULT_COST);
+        return canvas.getContentByte();
+    }
+
+    @Benchmark
+    public PdfContentByte addTalentPaths() throws Exception {
+        canvas.reset();
+        pageGenerator.addTalentPaths();
+        return canvas.getContentByte();
+    }
+
+    @Benchmark
+    public Document addSkillData() throws Exception {
+        // paragraphs flow onto new pages, which are written to nowhere
+        pageGenerator.addSkillData("Career Skills", pageGenerator.tree.getSkills());
+        return document;
+    }
+}
@@ -0,0 +1,74 @@
+package de.beimax.talenttree;
+
+import org.kohsuke.args4j.CmdLineParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * End-to-end rendering of a single page per generator type into an in-memory PDF, with caches filled as in a long
+ * run (warm) or an empty fit cache (cold). Run with -prof gc to see allocations per page (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageRenderBenchmark {
+    /**
+     * bundled tree rendered per generator type
+     */
+    private static final Map<String, String> TREES = new HashMap<>();
+    static {
+        TREES.put("Simple", "UniversalForceSensitiveExile");
+        TREES.put("Career", "ExplorerFringer");
+        TREES.put("Signature", "SignatureExplorerSuddenDiscovery");
+        TREES.put("Force", "ForcePowerInfluence");
+    }
+
+    @Param({"Simple", "Career", "Signature", "Force"})
+    public String type;
+
+    private PDFGenerator generator;
+
+    private TalentTree tree;
+
+    @Setup
+    public void setup() throws Exception {
+        generator = new PDFGenerator();
+        new CmdLineParser(generator).parseArgument("--lang", "en", "--only", TREES.get(type));
+        generator.setVerbose(false);
+        generator.initialize();
+
+        tree = generator.loadTrees().get(0);
+    }
+
+    @Benchmark
+    public byte[] renderWarm() throws Exception {
+        return generator.renderSinglePage(generator.createPageGenerator(tree));
+    }
+
+    @Benchmark
+    public byte[] renderCold() throws Exception {
+        generator.setFitCache(new FitCache());
+        return generator.renderSinglePage(generator.createPageGenerator(tree));
+    }
+}
@@ -0,0 +1,54 @@
+package de.beimax.talenttree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Concurrent renders sharing a single Renderer and RenderContext: all threads render the Explorer career (eight
+ * pages) at the same time. Compare with -t 1 to see how renders scale.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class RendererBenchmark {
+    private Renderer renderer;
+
+    private TreeFilter filter;
+
+    @Setup
+    public void setup() throws Exception {
+        renderer = new Renderer(new RenderContext.Builder().language("en").build());
+        filter = TreeFilter.parse("Explorer*,SignatureExplorer*");
+    }
+
+    @Benchmark
+    public byte[] render() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128 * 1024);
+        renderer.render(filter, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,73 @@
+package de.beimax.talenttree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * Queries of a character builder against the graph of a career tree: boxes unlockable and minimum XP to each box for
+ * a character owning half of the tree. Compiling the graph is measured as well, it happens once per tree on load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TalentGraphBenchmark {
+    private TalentTree tree;
+    private TalentGraph graph;
+
+    /**
+     * boxes owned: half of the tree, bought one by one
+     */
+    private int owned;
+
+    @Setup
+    public void setup() throws Exception {
+        List<TalentTree> trees = new TreeLoader(TreeFilter.parse("ExplorerFringer")).load(TreeLoader.readDataFile(null));
+        tree = trees.get(0);
+        graph = tree.getGraph();
+        for (int i = 0; i < graph.getNodeCount() / 2; i++) {
+            int next = graph.getUnlockable(owned);
+            owned |= Integer.highestOneBit(next);
+        }
+    }
+
+    @Benchmark
+    public TalentGraph compile() {
+        return TalentGraph.compile(tree);
+    }
+
+    @Benchmark
+    public int unlockable() {
+        return graph.getUnlockable(owned);
+    }
+
+    @Benchmark
+    public int minCostAll() {
+        int sum = 0;
+        for (int node = 0; node < graph.getNodeCount(); node++) sum += graph.getMinCost(owned, node);
+        return sum;
+    }
+}
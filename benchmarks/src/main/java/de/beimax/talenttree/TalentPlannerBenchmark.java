@@ -0,0 +1,98 @@
+package de.beimax.talenttree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * Purchase plans for every bundled career: a character owning nothing wants the most common talent of the career's
+ * specializations three times and the last talent of the first specialization. Threads is the parallelism of the
+ * planner's fork-join pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TalentPlannerBenchmark {
+    @Param({"1", "4"})
+    public int threads;
+
+    private TalentPlanner planner;
+    private final List<List<TalentTree>> careers = new ArrayList<>();
+    private final List<Map<String, Integer>> targets = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception {
+        List<TalentTree> trees = new TreeLoader(null).load(TreeLoader.readDataFile(null));
+        planner = new TalentPlanner(trees, threads);
+
+        // specializations per career
+        Map<String, List<TalentTree>> byCareer = new LinkedHashMap<>();
+        for (TalentTree tree : trees) {
+            if (!tree.getType().equals(PageGeneratorCareer.class.getName())) continue;
+            List<TalentTree> specializations = byCareer.get(tree.getHeader());
+            if (specializations == null) byCareer.put(tree.getHeader(), specializations = new ArrayList<>());
+            specializations.add(tree);
+        }
+
+        for (List<TalentTree> specializations : byCareer.values()) {
+            Map<String, Integer> counts = new HashMap<>();
+            String common = null;
+            for (TalentTree tree : specializations)
+                for (int i = 0; i < tree.getCellCount(); i++) {
+                    String key = tree.getCell(i).getKey();
+                    counts.put(key, counts.containsKey(key) ? counts.get(key) + 1 : 1);
+                    if (common == null || counts.get(key) > counts.get(common)) common = key;
+                }
+            Map<String, Integer> wanted = new LinkedHashMap<>();
+            wanted.put(common, Math.min(3, counts.get(common)));
+            TalentTree first = specializations.get(0);
+            String last = first.getCell(first.getCellCount() - 1).getKey();
+            if (!wanted.containsKey(last)) wanted.put(last, 1);
+
+            careers.add(specializations);
+            targets.add(wanted);
+        }
+    }
+
+    @TearDown
+    public void close() {
+        planner.close();
+    }
+
+    @Benchmark
+    public int planAllCareers() throws Exception {
+        int cost = 0;
+        for (int i = 0; i < careers.size(); i++) {
+            List<TalentTree> specializations = careers.get(i);
+            cost += planner.plan(specializations, new int[specializations.size()], targets.get(i)).getCost();
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,114 @@
+package de.beimax.talenttree;
+
+import com.itextpdf.text.Chunk;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Phrase;
+import org.kohsuke.args4j.CmdLineParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Phrase creation of a talent box text: compiled rich text vs. parsing the localized string on each call. Run with
+ * -prof gc to see allocations per box (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextPropertyBenchmark {
+    /**
+     * talent keys: plain, bold and symbol markup
+     */
+    @Param({"Grit", "Dodge", "MasterStarhopper", "RapidRecovery"})
+    public String key;
+
+    private PDFGenerator generator;
+
+    private PageGeneratorSimple pageGenerator;
+
+    @Setup
+    public void setup() throws Exception {
+        generator = new PDFGenerator();
+        new CmdLineParser(generator).parseArgument("--lang", "en");
+        generator.initialize();
+
+        pageGenerator = new PageGeneratorSimple();
+        pageGenerator.setGenerator(generator);
+    }
+
+    @Benchmark
+    public Phrase compiled() throws Exception {
+        return pageGenerator.parseTextProperty(key, 10f, true);
+    }
+
+    @Benchmark
+    public Phrase legacy() throws Exception {
+        return legacyParseTextProperty(key, 10f, true);
+    }
+
+    /**
+     * parseTextProperty as it was before rich texts were compiled
+     */
+    private Phrase legacyParseTextProperty(String key, float fontSize, boolean narrowFonts) throws Exception {
+        // define fonts
+        Font fontRegular, fontBold;
+        if (narrowFonts) {
+            fontRegular = new Font(generator.getFontCondensedRegular(), fontSize);
+            fontBold = new Font(generator.getFontCondensedBold(), fontSize);
+        } else {
+            fontRegular = new Font(generator.getFontRegular(), fontSize);
+            fontBold = new Font(generator.getFontBold(), fontSize);
+        }
+        Font fontSymbol = new Font(generator.getFontSymbol(), fontSize);
+
+        Phrase phrase = new Phrase();
+        phrase.setLeading(fontSize * 1.2f);
+
+        // get localized element
+        String localized = pageGenerator.getLocalizedString(key);
+        for (String part : localized.split("\\|")) {
+            if (part.length() == 0) continue; // make sure to not fire index out of range
+            char first = part.charAt(0);
+            char last = part.charAt(part.length()-1);
+            switch (first) {
+                case '*': // bold
+                    part = part.substring(1); // remove first char
+                    if (last == ' ') part = part.substring(0, part.length() - 1);
+                    phrase.add(new Chunk(part, fontBold));
+                    if (last == ' ') phrase.add(new Chunk(" ", fontRegular));
+                    break;
+                case '#': // symbol font
+                    part = part.substring(1); // remove first char
+                    if (last == ' ') part = part.substring(0, part.length() - 1);
+                    phrase.add(new Chunk(part, fontSymbol));
+                    if (last == ' ') phrase.add(new Chunk(" ", fontRegular));
+                    break;
+                default: // all other cases
+                    phrase.add(new Chunk(part, fontRegular));
+            }
+        }
+
+        return phrase;
+    }
+}
@@ -3,7 +3,12 @@ package de.beimax.talenttree;
 import com.itextpdf.text.*;
 import com.itextpdf.text.pdf.*;
 
+import java.text.CollationKey;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * PDF Generator for Star Wars Talent sheets
@@ -40,18 +45,43 @@ public abstract class AbstractPageGenerator implements Comparable<AbstractPageGe
     /**
      * output canvas of current page
      */
-    protected PdfContentByte canvas;
+    protected OptimizingCanvas canvas;
 
     /**
-     * data of current document
+     * outer canvases while drawing into templates
      */
-    protected Map data;
+    private final Deque<OptimizingCanvas> outerCanvases = new ArrayDeque<>();
+
+    /**
+     * template cache of current writer
+     */
+    protected TemplateCache templateCache;
+
+    /**
+     * compiled tree of current document
+     */
+    protected TalentTree tree;
 
     /**
      * pointer to generator
      */
     protected PDFGenerator generator;
 
+    /**
+     * metrics of page, null if no report is created
+     */
+    protected RenderReport.PageMetrics metrics;
+
+    /**
+     * strings keys resolved by this page
+     */
+    private final Set<String> resolvedKeys = new HashSet<>();
+
+    /**
+     * collation key of sort key, created when first compared
+     */
+    private CollationKey collationKey;
+
     public void setDocument(Document document) {
         this.document = document;
     }
@@ -60,62 +90,86 @@ public abstract class AbstractPageGenerator implements Comparable<AbstractPageGe
         this.writer = writer;
     }
 
-    public void setCanvas(PdfContentByte canvas) {
+    public void setCanvas(OptimizingCanvas canvas) {
         this.canvas = canvas;
     }
 
-    public void setData(Map data) {
-        this.data = data;
+    public void setTemplateCache(TemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
+    public void setTree(TalentTree tree) {
+        this.tree = tree;
     }
 
     public void setGenerator(PDFGenerator generator) {
         this.generator = generator;
     }
 
+    public void setMetrics(RenderReport.PageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return strings keys resolved by this page so far
+     */
+    public Set<String> getResolvedKeys() {
+        return resolvedKeys;
+    }
+
     /**
      * Generate single data page
      * @throws Exception
      */
     abstract public void generate() throws Exception;
 
+    /**
+     * record time spent in a section of the page, if a report is created
+     * @param name name of section
+     */
+    protected void endSection(String name) {
+        if (metrics != null) metrics.endSection(name);
+    }
+
     /**
      * Get localized sort key for ordering
      * @return Sort key string
      */
     abstract public String getLocalizedSortKey();
 
+    /**
+     * Get collation key of localized sort key, sorting by the rules of the strings' locale
+     * @return collation key
+     */
+    public CollationKey getCollationKey() {
+        if (collationKey == null) collationKey = generator.getCatalog().getCollationKey(getLocalizedSortKey());
+        return collationKey;
+    }
+
     /**
      * get data structure's id key
      * @return
      * @throws Exception
      */
     public String getId()  throws Exception {
-        return getString("id");
+        return tree.getId();
     }
 
     /**
-     * Get string from YAML/data
-     * @param key
-     * @return String
+     * Check tree contains everything needed by this generator - called before rendering starts
      * @throws Exception
      */
-    protected String getString(String key) throws Exception {
-        Object o = data.get(key);
-        if (o == null) throw new Exception("Data key " + key + " is empty!");
-        return (String) o;
+    public void validate() throws Exception {
     }
 
     /**
-     * Get a mapped localized string
-     * @param key
-     * @return
+     * check that a value needed by this generator exists
+     * @param value value of tree
+     * @param key data key for error message
      * @throws Exception
      */
-    protected String getMappedLocalizedString(String key) throws Exception {
-        String mapped = getString(key);
-        String local = generator.getStrings().getProperty(mapped);
-        if (local == null) throw new Exception("No translation for " + mapped + " in key " + key + "!");
-        return local;
+    protected void require(Object value, String key) throws Exception {
+        if (value == null) throw new Exception("Data key " + key + " is empty!");
     }
 
     /**
@@ -125,7 +179,8 @@ public abstract class AbstractPageGenerator implements Comparable<AbstractPageGe
      * @throws Exception
      */
     protected String getLocalizedString(String key) throws Exception {
-        String local = generator.getStrings().getProperty(key);
+        resolvedKeys.add(key);
+        String local = generator.getStrings().get(key);
         if (local == null) throw new Exception("No translation for " + key + "!");
         return local;
     }
@@ -137,19 +192,9 @@ public abstract class AbstractPageGenerator implements Comparable<AbstractPageGe
      * @throws Exception
      */
     protected HeaderProperties parseHeaderProperty(String key) throws Exception {
-        HeaderProperties headerProperties = new HeaderProperties();
-        // get localized element
-        String localized = getLocalizedString(key + "Data");
-        String[] parts = localized.split("\\|");
-
-        if (parts.length < 4)
-            throw new Exception("Line " + localized + " not correct for key " + key + "Data.");
-        headerProperties.title = parts[0];
-        headerProperties.page = parts[1];
-        headerProperties.active = parts[2].equalsIgnoreCase("A")?true:false;
-        headerProperties.status = parts[3].charAt(0);
-
-        return headerProperties;
+        // split once per strings file
+        resolvedKeys.add(key + "Data");
+        return generator.getCatalog().getHeaderProperties(key);
     }
 
     /**
@@ -161,45 +206,22 @@ public abstract class AbstractPageGenerator implements Comparable<AbstractPageGe
      * @throws Exception
      */
     protected Phrase parseTextProperty(String key, float fontSize, boolean narrowFonts) throws Exception {
-        // define fonts
-        Font fontRegular, fontBold;
+        // compiled localized element
+        resolvedKeys.add(key);
+        RichText text = generator.getRichText(key);
+
+        // define fonts - only get fonts actually used, so they do not have to be loaded
+        Font fontRegular = null, fontBold = null, fontSymbol = null;
         if (narrowFonts) {
-            fontRegular = new Font(generator.getFontCondensedRegular(), fontSize);
-            fontBold = new Font(generator.getFontCondensedBold(), fontSize);
+            if (text.hasStyle(RichText.REGULAR)) fontRegular = generator.getFont(generator.getFontCondensedRegular(), fontSize);
+            if (text.hasStyle(RichText.BOLD)) fontBold = generator.getFont(generator.getFontCondensedBold(), fontSize);
         } else {
-            fontRegular = new Font(generator.getFontRegular(), fontSize);
-            fontBold = new Font(generator.getFontBold(), fontSize);
-        }
-        Font fontSymbol = new Font(generator.getFontSymbol(), fontSize);
-
-        Phrase phrase = new Phrase();
-        phrase.setLeading(fontSize * 1.2f);
-
-        // get localized element
-        String localized = getLocalizedString(key);
-        for (String part : localized.split("\\|")) {
-            if (part.length() == 0) continue; // make sure to not fire index out of range
-            char first = part.charAt(0);
-            char last = part.charAt(part.length()-1);
-            switch (first) {
-                case '*': // bold
-                    part = part.substring(1); // remove first char
-                    if (last == ' ') part = part.substring(0, part.length() - 1);
-                    phrase.add(new Chunk(part, fontBold));
-                    if (last == ' ') phrase.add(new Chunk(" ", fontRegular));
-                    break;
-                case '#': // symbol font
-                    part = part.substring(1); // remove first char
-                    if (last == ' ') part = part.substring(0, part.length() - 1);
-                    phrase.add(new Chunk(part, fontSymbol));
-                    if (last == ' ') phrase.add(new Chunk(" ", fontRegular));
-                    break;
-                default: // all other cases
-                    phrase.add(new Chunk(part, fontRegular));
-            }
+            if (text.hasStyle(RichText.REGULAR)) fontRegular = generator.getFont(generator.getFontRegular(), fontSize);
+            if (text.hasStyle(RichText.BOLD)) fontBold = generator.getFont(generator.getFontBold(), fontSize);
         }
+        if (text.hasStyle(RichText.SYMBOL)) fontSymbol = generator.getFont(generator.getFontSymbol(), fontSize);
 
-        return phrase;
+        return text.toPhrase(fontSize, fontRegular, fontBold, fontSymbol);
     }
 
     /**
@@ -250,10 +272,49 @@ public abstract class AbstractPageGenerator implements Comparable<AbstractPageGe
         return document.getPageSize().getWidth() - PDFGenerator.marginHorizontal;
     }
 
+    /**
+     * Start drawing into a new template - canvas will point to the template until endTemplate() is called
+     * @param width width of template
+     * @param height height of template
+     * @return template
+     */
+    protected PdfTemplate beginTemplate(float width, float height) {
+        PdfTemplate template = canvas.createTemplate(width, height);
+        outerCanvases.push(canvas);
+        canvas = new OptimizingCanvas(template, canvas.getPrecision());
+        return template;
+    }
+
+    /**
+     * Stop drawing into template and return to outer canvas
+     */
+    protected void endTemplate() {
+        canvas.flush();
+        canvas = outerCanvases.pop();
+    }
+
     /**
      * add footer information to page, copyright, etc.
      */
     protected void addFooter() throws Exception {
+        // footer is the same on every page
+        PdfTemplate template = templateCache.get("footer");
+        if (template == null) {
+            template = beginTemplate(getPageWidth(), getPageHeight());
+            try {
+                drawFooter();
+            } finally {
+                endTemplate();
+            }
+            templateCache.put("footer", template);
+        }
+        canvas.addTemplate(template, 0, 0);
+    }
+
+    /**
+     * draw footer information, copyright, etc.
+     */
+    protected void drawFooter() throws Exception {
         // draw legend text
         canvas.beginText();
         canvas.setFontAndSize(generator.getFontRegular(), 6f);
@@ -264,12 +325,34 @@ public abstract class AbstractPageGenerator implements Comparable<AbstractPageGe
     }
 
     /**
-     * Data structure holding header properties of a single entry
+     * Data structure holding header properties of a single entry - immutable, shared by all pages
      */
-    protected class HeaderProperties {
-        public String title;
-        public String page;
-        public boolean active;
-        public char status; //ranked, normal, etc.
+    public static final class HeaderProperties {
+        public final String title;
+        public final String page;
+        public final boolean active;
+        public final char status; //ranked, normal, etc.
+
+        public HeaderProperties(String title, String page, boolean active, char status) {
+            this.title = title;
+            this.page = page;
+            this.active = active;
+            this.status = status;
+        }
+
+        /**
+         * Parse header properties line like "TITLE|123|A|N"
+         * @param key talent key
+         * @param localized localized line of key + "Data"
+         * @return header properties
+         * @throws Exception
+         */
+        public static HeaderProperties parse(String key, String localized) throws Exception {
+            String[] parts = localized.split("\\|");
+
+            if (parts.length < 4)
+                throw new Exception("Line " + localized + " not correct for key " + key + "Data.");
+            return new HeaderProperties(parts[0], parts[1], parts[2].equalsIgnoreCase("A"), parts[3].charAt(0));
+        }
     }
 }
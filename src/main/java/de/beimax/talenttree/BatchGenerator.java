@@ -0,0 +1,152 @@
+package de.beimax.talenttree;
+
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Batch mode: create several PDFs (e.g. all languages and page sizes) in one run. Jobs are read from a YAML manifest,
+ * one document per job:
+ *
+ * ---
+ * strings: strings_de.txt     # translation file (or lang: de)
+ * pageSize: letter            # optional, A4 or letter
+ * trees: [Explorer*, ForcePowerSense]  # optional, ids or globs of trees to include
+ * output: Talente_letter.pdf  # optional, default: FileName of translation file and page size
+ *
+ * Data, fonts and caches are loaded once and shared by all jobs, jobs run concurrently.
+ */
+public class BatchGenerator {
+    /**
+     * generator holding command line settings
+     */
+    private final PDFGenerator settings;
+
+    /**
+     * Constructor
+     * @param settings generator holding command line settings
+     */
+    public BatchGenerator(PDFGenerator settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * run all jobs of manifest
+     * @throws Exception
+     */
+    public void generate() throws Exception {
+        long start = System.nanoTime();
+
+        // parse data once - all jobs share data, loaded strings files and caches
+        JobFactory factory = new JobFactory(settings);
+
+        // create jobs
+        Set<String> outputs = new HashSet<>();
+        final List<PDFGenerator> jobs = new ArrayList<>();
+        for (Map<String, Object> definition : loadManifest()) {
+            PDFGenerator job = factory.createJob(definition, settings.getThreads());
+            if (!outputs.add(job.getFileName()))
+                throw new Exception("Output file " + job.getFileName() + " is created by more than one job.");
+            jobs.add(job);
+        }
+
+        // keep standard output clean if a job writes its PDF there
+        PrintStream console = settings.getConsole();
+        for (PDFGenerator job : jobs)
+            if (job.getConsole() == System.err) console = System.err;
+        final PrintStream progress = console;
+
+        // run jobs concurrently on a shared pool
+        int parallelism = settings.getThreads() > 1 ? settings.getThreads() : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            final List<RecursiveAction> tasks = new ArrayList<>(jobs.size());
+            for (final PDFGenerator job : jobs) {
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        try {
+                            long jobStart = System.nanoTime();
+                            job.generate();
+                            progress.println("Created " + job.getFileName() + " in " + (System.nanoTime() - jobStart) / 1000000 + " ms");
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+            }
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } catch (RuntimeException e) {
+            // unwrap exceptions thrown by jobs
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+
+        // keep fitted font sizes for next run
+        factory.saveFitCache();
+
+        progress.println("Batch: " + jobs.size() + " jobs done in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * load job definitions from manifest
+     * @return list of job definitions
+     * @throws Exception
+     */
+    protected List<Map<String, Object>> loadManifest() throws Exception {
+        File file = new File(settings.getBatchFile());
+        if (!file.exists()) throw new Exception("Batch manifest " + file + " not found.");
+
+        List<Map<String, Object>> definitions = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            for (Object o : new Yaml().loadAll(in)) {
+                if (o == null) continue; // empty document
+                if (!(o instanceof Map)) throw new Exception("Job definition is not a map: " + o);
+                Map<String, Object> definition = new LinkedHashMap<>();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) o).entrySet()) {
+                    if (!(entry.getKey() instanceof String))
+                        throw new Exception("Key " + entry.getKey() + " of job definition is not a string: " + o);
+                    definition.put((String) entry.getKey(), entry.getValue());
+                }
+                definitions.add(definition);
+            }
+        } catch (Exception e) {
+            throw new Exception("Error loading batch manifest: " + e.getMessage());
+        }
+        if (definitions.isEmpty()) throw new Exception("Batch manifest " + file + " contains no jobs.");
+
+        return definitions;
+    }
+}
@@ -0,0 +1,152 @@
+package de.beimax.talenttree;
+
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Output stream collecting bytes in a direct ByteBuffer, growing as needed. Unlike ByteArrayOutputStream, the result
+ * is not copied when taken, and it can be written to channels (sockets, files) without copying it again. Not thread
+ * safe.
+ *
+ * The buffer doubles when full. Outgrown buffers are freed right away instead of waiting for the garbage collector,
+ * unless a view of them has been handed out by {@link #toByteBuffer()}.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+    /**
+     * largest buffer that can be allocated
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /**
+     * frees direct buffers, null if not supported by the JVM
+     */
+    private static final Method CLEANER;
+
+    /**
+     * instance of Unsafe to invoke cleaner on
+     */
+    private static final Object UNSAFE;
+
+    static {
+        Method cleaner = null;
+        Object unsafe = null;
+        try {
+            // sun.misc.Unsafe.invokeCleaner is available from Java 9 on
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            Field field = c.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            cleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception e) {
+            // leave freeing buffers to the garbage collector
+            cleaner = null;
+            unsafe = null;
+        }
+        CLEANER = cleaner;
+        UNSAFE = unsafe;
+    }
+
+    private ByteBuffer buffer;
+
+    /**
+     * true if a view of the buffer has been handed out - the buffer must not be freed or overwritten then
+     */
+    private boolean shared;
+
+    /**
+     * Constructor
+     * @param initialCapacity initial size of buffer
+     */
+    public ByteBufferOutputStream(int initialCapacity) {
+        buffer = ByteBuffer.allocateDirect(initialCapacity);
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    public int size() {
+        return buffer.position();
+    }
+
+    /**
+     * @return read only view of bytes written - shares content with this stream
+     */
+    public ByteBuffer toByteBuffer() {
+        shared = true;
+        ByteBuffer result = buffer.duplicate();
+        result.flip();
+        return result.asReadOnlyBuffer();
+    }
+
+    /**
+     * discard bytes written, keeping the buffer unless it is shared with a view
+     */
+    public void reset() {
+        if (shared) {
+            buffer = ByteBuffer.allocateDirect(buffer.capacity());
+            shared = false;
+        } else buffer.clear();
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        buffer.put(b, off, len);
+    }
+
+    /**
+     * grow buffer to hold more bytes
+     * @param more number of bytes to be written
+     */
+    private void ensureCapacity(int more) {
+        if (buffer.remaining() >= more) return;
+        long needed = (long) buffer.position() + more;
+        if (needed > MAX_CAPACITY) throw new OutOfMemoryError("Buffer too large.");
+        long capacity = Math.min(Math.max(buffer.capacity() * 2L, needed), MAX_CAPACITY);
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+        buffer.flip();
+        grown.put(buffer);
+        if (!shared) free(buffer);
+        buffer = grown;
+        shared = false;
+    }
+
+    /**
+     * release memory of a direct buffer that is not referenced any more
+     * @param old buffer to free
+     */
+    private static void free(ByteBuffer old) {
+        if (CLEANER == null) return;
+        try {
+            CLEANER.invoke(UNSAFE, old);
+        } catch (Exception e) {
+            // garbage collector will free it
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package de.beimax.talenttree;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Locations and ids of the documents within a YAML data file, so single documents can be parsed on demand. Files are
+ * memory mapped, documents are delimited by "---" lines. The index of a data file is kept in a sidecar file (data
+ * file name + ".idx") and created again when the data file changes, so selected trees can be found without reading
+ * the whole data file.
+ */
+public class DocumentIndex {
+    private static final int MAGIC = 0x53575449; // SWTI
+    private static final short VERSION = 1;
+
+    /**
+     * content of data file
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * start offsets of documents
+     */
+    private int[] offsets = new int[64];
+
+    /**
+     * lengths of documents
+     */
+    private int[] lengths = new int[64];
+
+    /**
+     * ids of documents, null for empty documents
+     */
+    private String[] ids;
+
+    /**
+     * number of documents
+     */
+    private int size = 0;
+
+    /**
+     * Constructor - scans buffer for documents
+     * @param buffer content of data file
+     * @throws Exception
+     */
+    public DocumentIndex(ByteBuffer buffer) throws Exception {
+        this.buffer = buffer;
+        scan();
+        readIds();
+    }
+
+    /**
+     * Constructor - index read from sidecar file
+     */
+    private DocumentIndex(ByteBuffer buffer, int[] offsets, int[] lengths, String[] ids) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.ids = ids;
+        this.size = ids.length;
+    }
+
+    /**
+     * open data file or default data of JAR - the index of data files is read from its sidecar file, if up to date,
+     * or created and saved otherwise
+     * @param dataFile data file name or null for default data
+     * @return index of data
+     * @throws Exception
+     */
+    public static DocumentIndex open(String dataFile) throws Exception {
+        ByteBuffer buffer = TreeLoader.readDataFile(dataFile);
+        if (dataFile == null) return new DocumentIndex(buffer);
+
+        File file = new File(dataFile);
+        File indexFile = new File(dataFile + ".idx");
+        DocumentIndex index = read(indexFile, file, buffer);
+        if (index == null) {
+            index = new DocumentIndex(buffer);
+            try {
+                index.write(indexFile, file);
+            } catch (IOException e) {
+                // index is not kept, e.g. in read only directories
+            }
+        }
+        return index;
+    }
+
+    /**
+     * read sidecar file
+     * @param indexFile sidecar file
+     * @param dataFile data file
+     * @param buffer content of data file
+     * @return index or null, if sidecar file does not exist or does not match data file
+     */
+    private static DocumentIndex read(File indexFile, File dataFile, ByteBuffer buffer) {
+        if (!indexFile.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) return null;
+            if (in.readLong() != dataFile.length() || in.readLong() != dataFile.lastModified()) return null;
+            int size = in.readInt();
+            int[] offsets = new int[size], lengths = new int[size];
+            String[] ids = new String[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = in.readBoolean() ? in.readUTF() : null;
+                offsets[i] = in.readInt();
+                lengths[i] = in.readInt();
+                if (offsets[i] < 0 || lengths[i] < 0 || offsets[i] + lengths[i] > buffer.limit()) return null;
+            }
+            return new DocumentIndex(buffer, offsets, lengths, ids);
+        } catch (IOException e) {
+            return null; // broken file, create again
+        }
+    }
+
+    /**
+     * write sidecar file - written to temporary file and moved, so readers never see partial files
+     * @param indexFile sidecar file
+     * @param dataFile data file
+     * @throws IOException
+     */
+    private void write(File indexFile, File dataFile) throws IOException {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(dataFile.length());
+            out.writeLong(dataFile.lastModified());
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeBoolean(ids[i] != null);
+                if (ids[i] != null) out.writeUTF(ids[i]);
+                out.writeInt(offsets[i]);
+                out.writeInt(lengths[i]);
+            }
+        }
+        Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return number of documents
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i number of document
+     * @return id of document or null, if document is empty or has no id
+     */
+    public String getId(int i) {
+        return ids[i];
+    }
+
+    /**
+     * find selected documents
+     * @param filter selected trees or null for all
+     * @return numbers of documents having a selected id (all documents without filter), in order of data file
+     */
+    public List<Integer> find(TreeFilter filter) {
+        List<Integer> found = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+            if (filter == null || filter.matches(ids[i])) found.add(i);
+        return found;
+    }
+
+    /**
+     * load single document
+     * @param i number of document
+     * @param loader loader to use
+     * @return tree or null, if document is empty or not selected
+     * @throws Exception
+     */
+    public TalentTree loadTree(int i, TreeLoader loader) throws Exception {
+        List<TalentTree> trees = loader.load(getDocument(i));
+        return trees.isEmpty() ? null : trees.get(0);
+    }
+
+    /**
+     * @param i number of document
+     * @return content of document
+     */
+    private ByteBuffer getDocument(int i) {
+        ByteBuffer document = buffer.duplicate();
+        document.position(offsets[i]);
+        document.limit(offsets[i] + lengths[i]);
+        return document;
+    }
+
+    /**
+     * read ids of all documents
+     * @throws Exception
+     */
+    private void readIds() throws Exception {
+        ids = new String[size];
+        for (int i = 0; i < size; i++) ids[i] = TreeLoader.readId(getDocument(i));
+    }
+
+    /**
+     * find documents: a new document starts at each line beginning with "---"
+     */
+    private void scan() {
+        int limit = buffer.limit(), start = 0;
+        boolean lineStart = true;
+        for (int pos = 0; pos < limit; pos++) {
+            byte b = buffer.get(pos);
+            if (lineStart && b == '-' && isMarker(pos, limit)) {
+                add(start, pos);
+                start = pos;
+            }
+            lineStart = b == '\n' || b == '\r';
+        }
+        add(start, limit);
+    }
+
+    /**
+     * check for document marker: "---" followed by white space or end of file
+     * @param pos position of line start
+     * @param limit end of buffer
+     * @return true if marker found
+     */
+    private boolean isMarker(int pos, int limit) {
+        if (pos + 2 >= limit || buffer.get(pos + 1) != '-' || buffer.get(pos + 2) != '-') return false;
+        if (pos + 3 == limit) return true;
+        byte next = buffer.get(pos + 3);
+        return next == ' ' || next == '\t' || next == '\n' || next == '\r';
+    }
+
+    /**
+     * add document range, if not empty
+     * @param start start offset
+     * @param end end offset
+     */
+    private void add(int start, int end) {
+        if (end <= start) return;
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        offsets[size] = start;
+        lengths[size] = end - start;
+        size++;
+    }
+}
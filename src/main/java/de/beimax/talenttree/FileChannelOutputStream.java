@@ -0,0 +1,139 @@
+package de.beimax.talenttree;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Output stream writing to a FileChannel through a large direct buffer: the many small writes of iText are collected
+ * and written in large blocks without copying them into the Java heap first. flush() hands buffered bytes to the
+ * channel, so pages can be read by the next process of a pipe as soon as they are written. Not thread safe.
+ */
+public class FileChannelOutputStream extends OutputStream {
+    /**
+     * default size of buffer
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * close channel when stream is closed?
+     */
+    private final boolean closeChannel;
+
+    /**
+     * bytes handed to channel
+     */
+    private long written = 0;
+
+    /**
+     * Constructor
+     * @param channel channel to write to
+     * @param bufferSize size of buffer
+     * @param closeChannel close channel when stream is closed?
+     */
+    public FileChannelOutputStream(FileChannel channel, int bufferSize, boolean closeChannel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.closeChannel = closeChannel;
+    }
+
+    /**
+     * open file for writing, replacing existing content
+     * @param file file
+     * @return stream closing file when closed
+     * @throws IOException
+     */
+    public static FileChannelOutputStream open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new FileChannelOutputStream(channel, DEFAULT_BUFFER_SIZE, true);
+    }
+
+    /**
+     * @return stream writing to standard output - standard output is not closed when the stream is closed
+     */
+    public static FileChannelOutputStream stdout() {
+        return new FileChannelOutputStream(new FileOutputStream(FileDescriptor.out).getChannel(), DEFAULT_BUFFER_SIZE, false);
+    }
+
+    /**
+     * @return number of bytes written so far, including buffered ones
+     */
+    public long getBytesWritten() {
+        return written + buffer.position();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) drain();
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > buffer.remaining()) {
+            drain();
+            // larger than buffer: write directly
+            if (len > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(b, off, len));
+                return;
+            }
+        }
+        buffer.put(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            if (closeChannel) channel.close();
+        }
+    }
+
+    /**
+     * write buffered bytes to channel
+     * @throws IOException
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) written += channel.write(bytes);
+    }
+}
@@ -0,0 +1,179 @@
+package de.beimax.talenttree;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Cache of fitted font sizes for talent texts. Entries are keyed by a hash of the localized text, the box
+ * dimensions and the fonts used, so they can be kept in a file between runs. Thread safe.
+ */
+public class FitCache {
+    /**
+     * fitted font sizes
+     */
+    private final Map<String, Float> sizes = new ConcurrentHashMap<>();
+
+    /**
+     * number of text layouts done while fitting
+     */
+    private final AtomicLong layouts = new AtomicLong();
+
+    /**
+     * number of lookups
+     */
+    private final AtomicLong lookups = new AtomicLong();
+
+    /**
+     * number of cache hits
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * true if new entries have been added since loading
+     */
+    private volatile boolean modified = false;
+
+    /**
+     * Create cache key
+     * @param text localized text
+     * @param width width of box
+     * @param maxHeight maximum height of text
+     * @param fontSet identity of fonts used
+     * @return key
+     */
+    public String createKey(String text, float width, float maxHeight, String fontSet) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            String hash = new BigInteger(1, md.digest(text.getBytes("utf-8"))).toString(16);
+            return hash + "|" + width + "|" + maxHeight + "|" + fontSet;
+        } catch (Exception e) {
+            // MD5 and UTF-8 are always present, but keep a sensible fallback
+            return text.hashCode() + ":" + text.length() + "|" + width + "|" + maxHeight + "|" + fontSet;
+        }
+    }
+
+    /**
+     * Look up fitted font size
+     * @param key cache key
+     * @return font size or null if not in cache
+     */
+    public Float get(String key) {
+        lookups.incrementAndGet();
+        Float size = sizes.get(key);
+        if (size != null) hits.incrementAndGet();
+        return size;
+    }
+
+    /**
+     * Remember fitted font size
+     * @param key cache key
+     * @param size fitted font size
+     */
+    public void put(String key, float size) {
+        sizes.put(key, size);
+        modified = true;
+    }
+
+    /**
+     * count a single text layout done while fitting
+     */
+    public void countLayout() {
+        layouts.incrementAndGet();
+    }
+
+    /**
+     * Load cache entries from file - missing files are ignored
+     * @param file cache file
+     * @throws Exception
+     */
+    public void load(File file) throws Exception {
+        if (!file.exists()) return;
+
+        Properties properties = new Properties();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            properties.load(in);
+        } catch (Exception e) {
+            throw new Exception("Error loading fit cache file " + file + ": " + e.getMessage());
+        }
+        for (String key : properties.stringPropertyNames()) {
+            try {
+                sizes.put(key, Float.parseFloat(properties.getProperty(key)));
+            } catch (NumberFormatException e) {
+                // ignore broken entries, they will be measured again
+            }
+        }
+    }
+
+    /**
+     * Save cache entries to file, if anything has changed
+     * @param file cache file
+     * @throws Exception
+     */
+    public void save(File file) throws Exception {
+        if (!modified) return;
+
+        Properties properties = new Properties();
+        for (Map.Entry<String, Float> entry : sizes.entrySet())
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            properties.store(out, "Fitted font sizes of talent texts - may be deleted at any time");
+        } catch (Exception e) {
+            throw new Exception("Error saving fit cache file " + file + ": " + e.getMessage());
+        }
+        modified = false;
+    }
+
+    /**
+     * @return number of text layouts done while fitting
+     */
+    public long getLayouts() {
+        return layouts.get();
+    }
+
+    /**
+     * @return number of lookups
+     */
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return human readable statistics
+     */
+    public String getSummary() {
+        long lookups = getLookups();
+        long hits = getHits();
+        return "Text fitting: " + getLayouts() + " layouts, " + hits + " of " + lookups + " sizes cached ("
+                + (lookups == 0 ? 0 : Math.round(100.0 * hits / lookups)) + "%)";
+    }
+}
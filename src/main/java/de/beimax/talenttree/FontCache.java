@@ -0,0 +1,77 @@
+package de.beimax.talenttree;
+
+import com.itextpdf.text.Font;
+import com.itextpdf.text.pdf.BaseFont;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Shared Font instances per base font and size. Fonts returned must not be changed. Thread safe.
+ */
+public class FontCache {
+    /**
+     * cached fonts
+     */
+    private final ConcurrentMap<Key, Font> fonts = new ConcurrentHashMap<>();
+
+    /**
+     * Get shared font
+     * @param baseFont base font
+     * @param size font size
+     * @return font
+     */
+    public Font get(BaseFont baseFont, float size) {
+        Key key = new Key(baseFont, size);
+        Font font = fonts.get(key);
+        if (font == null) {
+            font = new Font(baseFont, size);
+            Font existing = fonts.putIfAbsent(key, font);
+            if (existing != null) font = existing;
+        }
+        return font;
+    }
+
+    /**
+     * Cache key: identity of base font and size
+     */
+    private static final class Key {
+        private final BaseFont baseFont;
+        private final float size;
+
+        Key(BaseFont baseFont, float size) {
+            this.baseFont = baseFont;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return baseFont == other.baseFont && Float.floatToIntBits(size) == Float.floatToIntBits(other.size);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(baseFont) + Float.floatToIntBits(size);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package de.beimax.talenttree;
+
+import com.itextpdf.text.pdf.BaseFont;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Process wide registry of fonts. Each font is loaded once per JVM when it is first used and shared by all
+ * generators and threads. Fonts found on disk are memory mapped by iText, fonts within the JAR are read into memory.
+ * Loaded fonts are read without locking, only loading takes a lock. Thread safe.
+ */
+public final class FontRegistry {
+    /**
+     * Fonts known to the registry
+     */
+    public enum Face {
+        HEADER("/fonts/LeagueGothic-Regular.otf", "Header"),
+        REGULAR("/fonts/LiberationSans-Regular.ttf", "Regular"),
+        BOLD("/fonts/LiberationSans-Bold.ttf", "Bold"),
+        CONDENSED_REGULAR("/fonts/LiberationSansNarrow-Regular.ttf", "Regular condensed"),
+        CONDENSED_BOLD("/fonts/LiberationSansNarrow-Bold.ttf", "Bold condensed"),
+        SYMBOL("/fonts/EotE_Symbol-Regular_v1.otf", "Symbol");
+
+        /**
+         * resource path of font
+         */
+        public final String resource;
+
+        /**
+         * name used in error messages
+         */
+        public final String description;
+
+        Face(String resource, String description) {
+            this.resource = resource;
+            this.description = description;
+        }
+    }
+
+    /**
+     * singleton instance
+     */
+    private static final FontRegistry instance = new FontRegistry();
+
+    /**
+     * loaded fonts by ordinal of face
+     */
+    private final AtomicReferenceArray<BaseFont> fonts = new AtomicReferenceArray<>(Face.values().length);
+
+    /**
+     * loaded fonts for compact output: OpenType CFF fonts are only subset by iText when loaded with Identity-H
+     * encoding, TrueType fonts are subset anyway and shared with the default fonts
+     */
+    private final AtomicReferenceArray<BaseFont> compactFonts = new AtomicReferenceArray<>(Face.values().length);
+
+    /**
+     * loaded fonts embedded completely: pages rendered separately embed identical font streams then, which
+     * are stored once when merged
+     */
+    private final AtomicReferenceArray<BaseFont> completeFonts = new AtomicReferenceArray<>(Face.values().length);
+
+    /**
+     * time spent loading fonts in nanoseconds
+     */
+    private final AtomicLong loadTime = new AtomicLong();
+
+    private FontRegistry() {
+    }
+
+    /**
+     * @return process wide registry
+     */
+    public static FontRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get font, load it on first use
+     * @param face font to get
+     * @return font
+     * @throws Exception
+     */
+    public BaseFont getFont(Face face) throws Exception {
+        BaseFont font = fonts.get(face.ordinal());
+        return font != null ? font : loadFont(fonts, face, BaseFont.WINANSI, true);
+    }
+
+    /**
+     * Get font embedding used glyphs only, load it on first use
+     * @param face font to get
+     * @return font
+     * @throws Exception
+     */
+    public BaseFont getCompactFont(Face face) throws Exception {
+        if (!face.resource.endsWith(".otf")) return getFont(face);
+        BaseFont font = compactFonts.get(face.ordinal());
+        return font != null ? font : loadFont(compactFonts, face, BaseFont.IDENTITY_H, true);
+    }
+
+    /**
+     * Get font embedded completely, load it on first use
+     * @param face font to get
+     * @return font
+     * @throws Exception
+     */
+    public BaseFont getCompleteFont(Face face) throws Exception {
+        BaseFont font = completeFonts.get(face.ordinal());
+        return font != null ? font
+                : loadFont(completeFonts, face, face.resource.endsWith(".otf") ? BaseFont.IDENTITY_H : BaseFont.WINANSI, false);
+    }
+
+    /**
+     * Load font into cache, unless another thread has done so while waiting for the lock
+     * @param cache loaded fonts
+     * @param face font to load
+     * @param encoding encoding of font
+     * @param subset false to embed font completely
+     * @return font
+     * @throws Exception
+     */
+    private synchronized BaseFont loadFont(AtomicReferenceArray<BaseFont> cache, Face face, String encoding, boolean subset) throws Exception {
+        BaseFont font = cache.get(face.ordinal());
+        if (font == null) {
+            font = loadFont(face, encoding);
+            font.setSubset(subset);
+            cache.set(face.ordinal(), font);
+        }
+        return font;
+    }
+
+    /**
+     * Load font and measure time
+     * @param face font to load
+     * @param encoding encoding of font
+     * @return font
+     * @throws Exception
+     */
+    private BaseFont loadFont(Face face, String encoding) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return loadFont(face.resource, encoding);
+        } catch (Exception e) {
+            throw new Exception(face.description + " font could not be loaded.");
+        } finally {
+            loadTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return time spent loading fonts in milliseconds
+     */
+    public long getLoadTimeMillis() {
+        return loadTime.get() / 1000000;
+    }
+
+    /**
+     * Load font from class path
+     * @param resource resource path of font
+     * @param encoding encoding of font
+     * @return font
+     * @throws Exception
+     */
+    private BaseFont loadFont(String resource, String encoding) throws Exception {
+        URL url = FontRegistry.class.getResource(resource);
+        if (url == null) throw new Exception("Font " + resource + " not found.");
+
+        // font on disk: iText maps the file into memory
+        if (url.getProtocol().equals("file")) {
+            File file = new File(url.toURI());
+            return BaseFont.createFont(file.getAbsolutePath(), encoding, BaseFont.EMBEDDED, false, null, null);
+        }
+
+        // font within JAR: read it once
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = url.openStream()) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        }
+        return BaseFont.createFont(resource, encoding, BaseFont.EMBEDDED, false, out.toByteArray(), null);
+    }
+}
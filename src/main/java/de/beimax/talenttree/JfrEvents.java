@@ -0,0 +1,219 @@
+package de.beimax.talenttree;
+
+import jdk.jfr.*;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Java Flight Recorder events of the generator's phases, shown on the timeline of recordings. Events are created only
+ * if the JVM supports JFR, so the generator still runs on JVMs without it. Creating and committing an event costs next
+ * to nothing while no recording is running: shouldCommit() is false and no fields are filled.
+ *
+ * Record with: java -XX:StartFlightRecording=filename=render.jfr -jar sw-talenttree-generator.jar
+ */
+public final class JfrEvents {
+    /**
+     * true if the JVM supports JFR events
+     */
+    public static final boolean AVAILABLE = isAvailable();
+
+    private JfrEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return started event or null, if JFR is not supported
+     */
+    public static DataLoad beginDataLoad() {
+        if (!AVAILABLE) return null;
+        DataLoad event = new DataLoad();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return started event or null, if JFR is not supported
+     */
+    public static Sort beginSort() {
+        if (!AVAILABLE) return null;
+        Sort event = new Sort();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return started event or null, if JFR is not supported
+     */
+    public static PageRender beginPageRender() {
+        if (!AVAILABLE) return null;
+        PageRender event = new PageRender();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return started event or null, if JFR is not supported
+     */
+    public static TalentBox beginTalentBox() {
+        if (!AVAILABLE) return null;
+        TalentBox event = new TalentBox();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return started event or null, if JFR is not supported
+     */
+    public static DocumentWrite beginDocumentWrite() {
+        if (!AVAILABLE) return null;
+        DocumentWrite event = new DocumentWrite();
+        event.begin();
+        return event;
+    }
+
+    @Name("de.beimax.talenttree.DataLoad")
+    @Label("Data Load")
+    @Description("Loading talent trees from data file or snapshot")
+    @Category("Talent Tree Generator")
+    public static class DataLoad extends Event {
+        @Label("Source")
+        String source;
+
+        @Label("Trees")
+        int trees;
+
+        /**
+         * end and commit event
+         * @param source data file or snapshot
+         * @param trees number of trees loaded
+         */
+        public void finish(String source, int trees) {
+            end();
+            if (!shouldCommit()) return;
+            this.source = source;
+            this.trees = trees;
+            commit();
+        }
+    }
+
+    @Name("de.beimax.talenttree.Sort")
+    @Label("Sort")
+    @Description("Creating and sorting page generators")
+    @Category("Talent Tree Generator")
+    public static class Sort extends Event {
+        @Label("Pages")
+        int pages;
+
+        /**
+         * end and commit event
+         * @param pages number of pages sorted
+         */
+        public void finish(int pages) {
+            end();
+            if (!shouldCommit()) return;
+            this.pages = pages;
+            commit();
+        }
+    }
+
+    @Name("de.beimax.talenttree.PageRender")
+    @Label("Page Render")
+    @Description("Rendering a single page")
+    @Category("Talent Tree Generator")
+    public static class PageRender extends Event {
+        @Label("Tree Id")
+        String treeId;
+
+        @Label("Generator")
+        String generator;
+
+        /**
+         * end and commit event
+         * @param treeId id of tree rendered
+         * @param generator page generator class
+         */
+        public void finish(String treeId, String generator) {
+            end();
+            if (!shouldCommit()) return;
+            this.treeId = treeId;
+            this.generator = generator;
+            commit();
+        }
+    }
+
+    @Name("de.beimax.talenttree.TalentBox")
+    @Label("Talent Box")
+    @Description("Rendering a single talent box, fitting its text")
+    @Category("Talent Tree Generator")
+    @StackTrace(false)
+    public static class TalentBox extends Event {
+        @Label("Key")
+        String key;
+
+        @Label("Font Size")
+        float fontSize;
+
+        @Label("Fit Attempts")
+        @Description("Text layouts needed to fit the text, 0 if the size was cached")
+        int fitAttempts;
+
+        /**
+         * end and commit event
+         * @param key talent key
+         * @param fontSize final font size of text
+         * @param fitAttempts text layouts needed to fit the text
+         */
+        public void finish(String key, float fontSize, int fitAttempts) {
+            end();
+            if (!shouldCommit()) return;
+            this.key = key;
+            this.fontSize = fontSize;
+            this.fitAttempts = fitAttempts;
+            commit();
+        }
+    }
+
+    @Name("de.beimax.talenttree.DocumentWrite")
+    @Label("Document Write")
+    @Description("Closing or flushing a PDF document")
+    @Category("Talent Tree Generator")
+    public static class DocumentWrite extends Event {
+        @Label("Operation")
+        String operation;
+
+        /**
+         * end and commit event
+         * @param operation close, flush or merge
+         */
+        public void finish(String operation) {
+            end();
+            if (!shouldCommit()) return;
+            this.operation = operation;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package de.beimax.talenttree;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Creates generators for single output jobs (batch jobs, server requests) that share data, strings files and caches.
+ * Jobs are defined by maps with the keys strings, lang, pageSize, trees and output. Thread safe.
+ */
+public class JobFactory {
+    /**
+     * keys allowed in job definitions
+     */
+    public static final Set<String> jobKeys = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("strings", "lang", "pageSize", "trees", "output")));
+
+    /**
+     * generator holding command line settings
+     */
+    private final PDFGenerator settings;
+
+    /**
+     * compiled trees shared by all jobs
+     */
+    private final List<TalentTree> trees;
+
+    /**
+     * loaded strings files by their location - unknown languages fall back to the same English file, so it is loaded
+     * once only
+     */
+    private final ConcurrentMap<String, StringCatalog> catalogs = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor - parses data file once
+     * @param settings generator holding command line settings
+     * @throws Exception
+     */
+    public JobFactory(PDFGenerator settings) throws Exception {
+        this.settings = settings;
+
+        this.trees = Collections.unmodifiableList(settings.loadTrees());
+
+        // shared fit cache
+        if (settings.getFitCacheFile() != null) settings.getFitCache().load(new File(settings.getFitCacheFile()));
+
+        // shared page cache
+        if (settings.getPageCache() == null && settings.getCacheDir() != null)
+            settings.setPageCache(new PageCache(new File(settings.getCacheDir())));
+    }
+
+    /**
+     * @return shared fit cache
+     */
+    public FitCache getFitCache() {
+        return settings.getFitCache();
+    }
+
+    /**
+     * save shared fit cache, if a file has been set
+     * @throws Exception
+     */
+    public void saveFitCache() throws Exception {
+        if (settings.getFitCacheFile() != null) settings.getFitCache().save(new File(settings.getFitCacheFile()));
+    }
+
+    /**
+     * @return number of strings files loaded
+     */
+    int getCatalogCount() {
+        return catalogs.size();
+    }
+
+    /**
+     * create and initialize generator for job
+     * @param definition job definition
+     * @param threads number of threads to render pages with
+     * @return initialized generator
+     * @throws Exception
+     */
+    public PDFGenerator createJob(Map<String, Object> definition, int threads) throws Exception {
+        for (String key : definition.keySet())
+            if (!jobKeys.contains(key)) throw new Exception("Unknown key " + key + " in job definition: " + definition);
+
+        PDFGenerator job = new PDFGenerator();
+        job.setThreads(threads);
+        job.setTrees(trees);
+        job.setFitCache(settings.getFitCache());
+        job.setPageCache(settings.getPageCache());
+        job.setOptimize(settings.getOptimize());
+        job.setPrecision(settings.getPrecision());
+
+        // strings file - command line settings are the default
+        String strings = getString(definition, "strings");
+        String lang = getString(definition, "lang");
+        if (strings == null && lang == null) {
+            strings = settings.getStringsFile();
+            lang = settings.getLanguage();
+        }
+        job.setStringsFile(strings);
+        job.setLanguage(lang);
+        String catalogKey = job.getStringsUrl().toString();
+        job.setCatalog(catalogs.get(catalogKey));
+
+        // page size
+        String pageSize = getString(definition, "pageSize");
+        if (pageSize != null) job.setPageSize(pageSize);
+
+        // tree selection
+        Object trees = definition.get("trees");
+        if (trees instanceof Collection) {
+            List<String> ids = new ArrayList<>();
+            for (Object id : (Collection<?>) trees) ids.add(String.valueOf(id));
+            job.setTreeFilter(new TreeFilter(ids));
+        } else if (trees != null) job.setTreeFilter(TreeFilter.parse(trees.toString()));
+
+        job.initialize();
+        catalogs.putIfAbsent(catalogKey, job.getCatalog());
+
+        // output file
+        String output = getString(definition, "output");
+        if (output == null) {
+            String fileName = job.getFileName();
+            output = fileName.substring(0, fileName.length() - 4) + "_" + (pageSize != null ? pageSize : "A4") + ".pdf";
+        }
+        job.setOutputFile(output);
+
+        return job;
+    }
+
+    /**
+     * get optional string from job definition
+     * @param definition job definition
+     * @param key key
+     * @return string or null
+     */
+    private String getString(Map<String, Object> definition, String key) {
+        Object o = definition.get(key);
+        return o == null ? null : o.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package de.beimax.talenttree;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Thread safe histogram of request latencies with fixed buckets in milliseconds.
+ */
+public class LatencyHistogram {
+    /**
+     * upper bounds of buckets in milliseconds, last bucket is unbounded
+     */
+    private static final long[] bounds = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    /**
+     * counts per bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(bounds.length + 1);
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * record latency
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long millis = nanos / 1000000;
+        int i = 0;
+        while (i < bounds.length && millis > bounds[i]) i++;
+        counts.incrementAndGet(i);
+        count.incrementAndGet();
+        sumNanos.addAndGet(nanos);
+
+        long max;
+        do {
+            max = maxNanos.get();
+        } while (nanos > max && !maxNanos.compareAndSet(max, nanos));
+    }
+
+    /**
+     * @return number of recorded latencies
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * estimate percentile by upper bound of bucket containing it
+     * @param percentile percentile (0-100)
+     * @return upper bound in milliseconds, maximum latency for the unbounded bucket, 0 if empty
+     */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(total * percentile / 100), seen = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return bounds[i];
+        }
+        return maxNanos.get() / 1000000;
+    }
+
+    /**
+     * @return histogram as JSON object, bucket counts are cumulative
+     */
+    public String toJson() {
+        long total = count.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"count\":").append(total)
+                .append(",\"meanMs\":").append(total == 0 ? 0 : sumNanos.get() / total / 1000000)
+                .append(",\"maxMs\":").append(maxNanos.get() / 1000000)
+                .append(",\"p50Ms\":").append(getPercentile(50))
+                .append(",\"p90Ms\":").append(getPercentile(90))
+                .append(",\"p99Ms\":").append(getPercentile(99))
+                .append(",\"buckets\":[");
+        long cumulative = 0;
+        for (int i = 0; i <= bounds.length; i++) {
+            cumulative += counts.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"le\":").append(i < bounds.length ? String.valueOf(bounds[i]) : "\"+Inf\"")
+                    .append(",\"count\":").append(cumulative).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+}
@@ -0,0 +1,325 @@
+package de.beimax.talenttree;
+
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfPTable;
+import com.itextpdf.text.pdf.PdfTemplate;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Canvas page generators draw through. Wraps a PdfContentByte (page or template) and keeps track of the graphics
+ * state written so far:
+ *
+ * - setting fill or stroke color, line width, font and size to the current value writes nothing
+ * - stroked paths following each other with the same style are written as a single path with a single stroke
+ * - coordinates can be rounded to fewer decimal places
+ *
+ * Operators are written to the wrapped canvas lazily - call flush() before using the wrapped canvas directly
+ * (getContentByte() does so). Not thread safe.
+ */
+public class OptimizingCanvas {
+    /**
+     * decimal places of coordinates written by iText
+     */
+    public static final int MAX_PRECISION = 2;
+
+    /**
+     * wrapped canvas
+     */
+    private final PdfContentByte target;
+
+    /**
+     * decimal places of coordinates and factor to round with
+     */
+    private final int precision;
+    private final double scale;
+
+    /**
+     * graphics state written, null values are unknown
+     */
+    private State state = new State();
+
+    /**
+     * states saved by saveState()
+     */
+    private final Deque<State> savedStates = new ArrayDeque<>();
+
+    /**
+     * path being constructed: operator (MOVE, LINE) and coordinates
+     */
+    private float[] path = new float[48];
+    private int pathLength = 0;
+
+    /**
+     * stroked paths not written yet, same format as path
+     */
+    private float[] strokes = new float[96];
+    private int strokesLength = 0;
+
+    private static final float MOVE = 0;
+    private static final float LINE = 1;
+
+    /**
+     * Constructor
+     * @param target canvas to write to
+     * @param precision decimal places of coordinates (0 to MAX_PRECISION)
+     */
+    public OptimizingCanvas(PdfContentByte target, int precision) {
+        this.target = target;
+        this.precision = precision;
+        this.scale = Math.pow(10, precision);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Get wrapped canvas to write to directly - pending operators are written and the graphics state is considered
+     * unknown afterwards
+     * @return wrapped canvas
+     */
+    public PdfContentByte getContentByte() {
+        flush();
+        state = new State();
+        return target;
+    }
+
+    /**
+     * write pending operators
+     */
+    public void flush() {
+        if (strokesLength > 0) {
+            writePath(strokes, strokesLength);
+            target.stroke();
+            strokesLength = 0;
+        }
+        if (pathLength > 0) {
+            writePath(path, pathLength);
+            pathLength = 0;
+        }
+    }
+
+    /**
+     * discard pending operators and content of wrapped canvas
+     */
+    public void reset() {
+        pathLength = 0;
+        strokesLength = 0;
+        state = new State();
+        savedStates.clear();
+        target.reset();
+    }
+
+    public void saveState() {
+        flush();
+        target.saveState();
+        savedStates.push(state.copy());
+    }
+
+    public void restoreState() {
+        flush();
+        target.restoreState();
+        state = savedStates.isEmpty() ? new State() : savedStates.pop();
+    }
+
+    public void setColorFill(BaseColor color) {
+        if (color.equals(state.fill)) return;
+        flush();
+        target.setColorFill(color);
+        state.fill = color;
+    }
+
+    public void setColorStroke(BaseColor color) {
+        if (color.equals(state.stroke)) return;
+        flush();
+        target.setColorStroke(color);
+        state.stroke = color;
+    }
+
+    public void setLineWidth(float width) {
+        if (state.lineWidth != null && state.lineWidth == width) return;
+        flush();
+        target.setLineWidth(width);
+        state.lineWidth = width;
+    }
+
+    public void setFontAndSize(BaseFont font, float size) {
+        if (font == state.font && state.fontSize != null && state.fontSize == size) return;
+        flush();
+        target.setFontAndSize(font, size);
+        state.font = font;
+        state.fontSize = size;
+    }
+
+    public void beginText() {
+        flush();
+        target.beginText();
+    }
+
+    public void endText() {
+        target.endText();
+    }
+
+    public void showTextAligned(int alignment, String text, float x, float y, float rotation) {
+        target.showTextAligned(alignment, text, round(x), round(y), rotation);
+    }
+
+    public void moveTo(float x, float y) {
+        path = append(path, pathLength, MOVE, x, y);
+        pathLength += 3;
+    }
+
+    public void lineTo(float x, float y) {
+        path = append(path, pathLength, LINE, x, y);
+        pathLength += 3;
+    }
+
+    /**
+     * stroke path - written together with following stroked paths
+     */
+    public void stroke() {
+        if (strokes.length < strokesLength + pathLength) strokes = grow(strokes, strokesLength + pathLength);
+        System.arraycopy(path, 0, strokes, strokesLength, pathLength);
+        strokesLength += pathLength;
+        pathLength = 0;
+    }
+
+    public void fill() {
+        flush();
+        target.fill();
+    }
+
+    public void closePathStroke() {
+        flush();
+        target.closePathStroke();
+    }
+
+    public void closePathFillStroke() {
+        flush();
+        target.closePathFillStroke();
+    }
+
+    public PdfTemplate createTemplate(float width, float height) {
+        return target.createTemplate(width, height);
+    }
+
+    /**
+     * add template - it is written to the document when first added, so templates are written in the order they are
+     * used (instead of the order of an identity hash map when the document is closed)
+     * @param template template
+     * @param x horizontal position
+     * @param y vertical position
+     * @throws IOException
+     */
+    public void addTemplate(PdfTemplate template, float x, float y) throws IOException {
+        flush();
+        target.addTemplate(template, round(x), round(y));
+        target.getPdfWriter().releaseTemplate(template);
+    }
+
+    /**
+     * write all rows of table - in contrast to PdfPTable.writeSelectedRows(), empty background and line layers are
+     * skipped
+     * @param table table to write
+     * @param x left position
+     * @param y top position
+     */
+    public void writeTable(PdfPTable table, float x, float y) {
+        PdfContentByte canvas = getContentByte();
+        PdfContentByte[] canvases = PdfPTable.beginWritingRows(canvas);
+        table.writeSelectedRows(0, -1, round(x), round(y), canvases);
+        if (canvas.getPdfWriter().isTagged()) {
+            PdfPTable.endWritingRows(canvases);
+            return;
+        }
+        if (canvases[PdfPTable.BACKGROUNDCANVAS].getInternalBuffer().size() > 0) {
+            canvas.saveState();
+            canvas.add(canvases[PdfPTable.BACKGROUNDCANVAS]);
+            canvas.restoreState();
+        }
+        if (canvases[PdfPTable.LINECANVAS].getInternalBuffer().size() > 0) {
+            canvas.saveState();
+            canvas.setLineCap(2);
+            canvas.resetRGBColorStroke();
+            canvas.add(canvases[PdfPTable.LINECANVAS]);
+            canvas.restoreState();
+        }
+        canvas.add(canvases[PdfPTable.TEXTCANVAS]);
+    }
+
+    /**
+     * write path operators to wrapped canvas
+     */
+    private void writePath(float[] ops, int length) {
+        for (int i = 0; i < length; i += 3) {
+            if (ops[i] == MOVE) target.moveTo(round(ops[i + 1]), round(ops[i + 2]));
+            else target.lineTo(round(ops[i + 1]), round(ops[i + 2]));
+        }
+    }
+
+    /**
+     * round coordinate to precision
+     */
+    private float round(float v) {
+        if (precision >= MAX_PRECISION) return v;
+        return (float) (Math.round(v * scale) / scale);
+    }
+
+    private static float[] append(float[] ops, int length, float op, float x, float y) {
+        if (ops.length < length + 3) ops = grow(ops, length + 3);
+        ops[length] = op;
+        ops[length + 1] = x;
+        ops[length + 2] = y;
+        return ops;
+    }
+
+    private static float[] grow(float[] ops, int minLength) {
+        float[] grown = new float[Math.max(minLength, ops.length * 2)];
+        System.arraycopy(ops, 0, grown, 0, ops.length);
+        return grown;
+    }
+
+    /**
+     * graphics state written to canvas
+     */
+    private static class State {
+        BaseColor fill;
+        BaseColor stroke;
+        Float lineWidth;
+        BaseFont font;
+        Float fontSize;
+
+        State copy() {
+            State copy = new State();
+            copy.fill = fill;
+            copy.stroke = stroke;
+            copy.lineWidth = lineWidth;
+            copy.font = font;
+            copy.fontSize = fontSize;
+            return copy;
+        }
+    }
+}
@@ -3,14 +3,24 @@ package de.beimax.talenttree;
 import com.itextpdf.text.*;
 import com.itextpdf.text.pdf.*;
 import org.kohsuke.args4j.Option;
-import org.yaml.snakeyaml.Yaml;
 
 import java.io.*;
 import java.net.URL;
+import java.text.CollationKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * PDF Generator for Star Wars Talent sheets
@@ -56,34 +66,9 @@ public class PDFGenerator {
     public static final float verticalSpacing = 10f;
 
     /**
-     * header font
+     * shared fonts of this process
      */
-    private BaseFont fontHeader;
-
-    /**
-     * Regular font
-     */
-    private BaseFont fontRegular;
-
-    /**
-     * Bold font
-     */
-    private BaseFont fontBold;
-
-    /**
-     * Regular condensed font
-     */
-    private BaseFont fontCondensedRegular;
-
-    /**
-     * Bold condensed font
-     */
-    private BaseFont fontCondensedBold;
-
-    /**
-     * Star wars symbol font
-     */
-    private BaseFont fontSymbol;
+    private FontRegistry fontRegistry;
 
     @Option(name = "-h", usage = "print this help")
     private boolean printHelp = false;
@@ -100,14 +85,14 @@ public class PDFGenerator {
      */
     @Option(name = "--strings", usage = "translation file")
     private String stringsFile = null;
-    private Properties strings;
+    private StringCatalog catalog;
 
     /**
      * Data file
      */
     @Option(name = "--data", usage = "data file")
     private String dataFile = null;
-    private Iterable<Object> data; // list of data objects to render
+    private List<TalentTree> trees; // compiled trees to render
 
     /**
      * language
@@ -115,6 +100,173 @@ public class PDFGenerator {
     @Option(name = "--lang", usage = "language (ignored when --strings is set)")
     private String language = null;
 
+    /**
+     * number of threads
+     */
+    @Option(name = "--threads", usage = "number of threads to render pages with (1 = sequential, default) - fonts are embedded completely then, making PDFs larger")
+    private int threads = 1;
+
+    /**
+     * fit cache file
+     */
+    @Option(name = "--fit-cache", usage = "file to keep fitted font sizes in between runs")
+    private String fitCacheFile = null;
+    private FitCache fitCache = new FitCache();
+
+    /**
+     * page cache directory
+     */
+    @Option(name = "--cache-dir", usage = "directory to cache rendered pages in, only changed pages are rendered again")
+    private String cacheDir = null;
+    private PageCache pageCache = null;
+
+    /**
+     * streaming mode
+     */
+    @Option(name = "--stream", usage = "render data files with thousands of trees in two passes, keeping a single tree in memory only")
+    private boolean stream = false;
+
+    /**
+     * output profile
+     */
+    public static final String OPTIMIZE_SIZE = "size";
+    public static final String OPTIMIZE_SPEED = "speed";
+    @Option(name = "--optimize", usage = "optimize output for size (full compression, object streams, font subsets) or speed (fast compression)")
+    private String optimize = null;
+
+    /**
+     * decimal places of coordinates
+     */
+    @Option(name = "--precision", usage = "decimal places of coordinates in page content (0 to 2, default: 2)")
+    private int precision = OptimizingCanvas.MAX_PRECISION;
+
+    /**
+     * size of output file written, -1 if unknown
+     */
+    private long outputSize = -1;
+
+    /**
+     * size of output file without optimization, -1 if not measured
+     */
+    private long unoptimizedSize = -1;
+
+    /**
+     * split mode
+     */
+    @Option(name = "--split", usage = "write one PDF per tree or group (tree, group)")
+    private String split = null;
+
+    @Option(name = "--split-pattern", usage = "file name pattern of split PDFs and character sheets (default: {FileName}_{name}.pdf, also {pageSize})")
+    private String splitPattern = null;
+
+    @Option(name = "--zip", usage = "bundle split PDFs and their manifest into ZIP file")
+    private String zipFile = null;
+
+    @Option(name = "--manifest", usage = "JSON manifest listing size and SHA-256 hash of split PDFs (default: FileName.json)")
+    private String manifestFile = null;
+
+    /**
+     * purchase planning mode
+     */
+    @Option(name = "--plan", usage = "print cheapest XP purchase order of talents in the trees set by --only, ranks after colon (e.g. Dodge:2,MasterStarhopper)")
+    private String plan = null;
+
+    @Option(name = "--owned", usage = "talents owned for --plan: comma separated TreeId:Key or TreeId:row.column (e.g. ExplorerFringer:GalaxyMapper)")
+    private String owned = null;
+
+    /**
+     * character sheet mode
+     */
+    @Option(name = "--roster", usage = "YAML roster of characters: write one PDF per character with the talents learned crossed off")
+    private String rosterFile = null;
+
+    /**
+     * report file
+     */
+    @Option(name = "--report", usage = "write JSON report of timings, allocations and output size per phase and page to file")
+    private String reportFile = null;
+    private RenderReport report = null;
+
+    /**
+     * selected trees given on command line
+     */
+    @Option(name = "--only", usage = "render selected trees only: comma separated ids, wildcards * and ? allowed (e.g. Explorer*)")
+    private String only = null;
+
+    /**
+     * binary snapshot to load data and strings from
+     */
+    @Option(name = "--snapshot", usage = "binary snapshot of data and strings to start from, written again when sources change")
+    private String snapshotFile = null;
+
+    /**
+     * binary snapshot to compile
+     */
+    @Option(name = "--compile", usage = "compile data and strings to binary snapshot file and exit")
+    private String compileFile = null;
+
+    /**
+     * output file
+     */
+    public static final String STDOUT = "-";
+    @Option(name = "--output", usage = "output file, - for standard output (default: FileName of translation file)")
+    private String outputFile = null;
+
+    /**
+     * stream to write to instead of output file, null for file
+     */
+    private OutputStream outputStream = null;
+
+    /**
+     * print progress to console?
+     */
+    private boolean verbose = true;
+
+    /**
+     * batch manifest
+     */
+    @Option(name = "--batch", usage = "manifest file listing several output jobs to create in one run")
+    private String batchFile = null;
+
+    /**
+     * port of render server
+     */
+    @Option(name = "--serve", usage = "start local HTTP render service on port")
+    private Integer servePort = null;
+
+    /**
+     * host of render server
+     */
+    @Option(name = "--host", usage = "address render service listens on (default: 127.0.0.1)")
+    private String host = "127.0.0.1";
+
+    /**
+     * render service request timeout
+     */
+    @Option(name = "--timeout", usage = "render service request timeout in seconds (default: 60)")
+    private int timeout = 60;
+
+    /**
+     * render service queue size
+     */
+    @Option(name = "--queue", usage = "number of render service requests waiting for a worker before rejecting (default: 16)")
+    private int queueSize = 16;
+
+    /**
+     * selected trees, null for all
+     */
+    private TreeFilter treeFilter = null;
+
+    /**
+     * pool to render pages on, null to create one when needed
+     */
+    private ForkJoinPool pool = null;
+
+    /**
+     * shared fonts
+     */
+    private final FontCache fontCache = new FontCache();
+
     /**
      * Constructor
      * @throws Exception
@@ -128,32 +280,240 @@ public class PDFGenerator {
         return printHelp;
     }
 
-    public BaseFont getFontHeader() {
-        return fontHeader;
+    /**
+     * @param face font face
+     * @return font of face - complete fonts, if pages are rendered separately and merged (subsets would differ from
+     * page to page, identical complete fonts are stored once), fonts embedding used glyphs only, if output is optimized
+     * for size
+     * @throws Exception
+     */
+    protected BaseFont getFont(FontRegistry.Face face) throws Exception {
+        if (threads > 1 || pageCache != null) return fontRegistry.getCompleteFont(face);
+        if (!OPTIMIZE_SIZE.equals(optimize)) return fontRegistry.getFont(face);
+        return fontRegistry.getCompactFont(face);
     }
 
-    public BaseFont getFontRegular() {
-        return fontRegular;
+    public BaseFont getFontHeader() throws Exception {
+        return getFont(FontRegistry.Face.HEADER);
     }
 
-    public BaseFont getFontBold() {
-        return fontBold;
+    public BaseFont getFontRegular() throws Exception {
+        return getFont(FontRegistry.Face.REGULAR);
     }
 
-    public BaseFont getFontCondensedRegular() {
-        return fontCondensedRegular;
+    public BaseFont getFontBold() throws Exception {
+        return getFont(FontRegistry.Face.BOLD);
     }
 
-    public BaseFont getFontCondensedBold() {
-        return fontCondensedBold;
+    public BaseFont getFontCondensedRegular() throws Exception {
+        return getFont(FontRegistry.Face.CONDENSED_REGULAR);
     }
 
-    public BaseFont getFontSymbol() {
-        return fontSymbol;
+    public BaseFont getFontCondensedBold() throws Exception {
+        return getFont(FontRegistry.Face.CONDENSED_BOLD);
     }
 
-    public Properties getStrings() {
-        return strings;
+    public BaseFont getFontSymbol() throws Exception {
+        return getFont(FontRegistry.Face.SYMBOL);
+    }
+
+    /**
+     * @return localized strings, unmodifiable
+     */
+    public Map<String, String> getStrings() {
+        return catalog.getStrings();
+    }
+
+    public StringCatalog getCatalog() {
+        return catalog;
+    }
+
+    public void setCatalog(StringCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    public FitCache getFitCache() {
+        return fitCache;
+    }
+
+    public void setFitCache(FitCache fitCache) {
+        this.fitCache = fitCache;
+    }
+
+    public String getFitCacheFile() {
+        return fitCacheFile;
+    }
+
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    public PageCache getPageCache() {
+        return pageCache;
+    }
+
+    public void setPageCache(PageCache pageCache) {
+        this.pageCache = pageCache;
+    }
+
+    public String getBatchFile() {
+        return batchFile;
+    }
+
+    public Integer getServePort() {
+        return servePort;
+    }
+
+    public String getCompileFile() {
+        return compileFile;
+    }
+
+    public RenderReport getReport() {
+        return report;
+    }
+
+    public String getOptimize() {
+        return optimize;
+    }
+
+    public void setOptimize(String optimize) {
+        this.optimize = optimize;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void setPrecision(int precision) {
+        this.precision = precision;
+    }
+
+    public String getSplit() {
+        return split;
+    }
+
+    public String getSplitPattern() {
+        return splitPattern;
+    }
+
+    public String getZipFile() {
+        return zipFile;
+    }
+
+    public String getManifestFile() {
+        return manifestFile;
+    }
+
+    public String getPlan() {
+        return plan;
+    }
+
+    public String getOwned() {
+        return owned;
+    }
+
+    public String getRosterFile() {
+        return rosterFile;
+    }
+
+    public String getPageSize() {
+        return pageSize;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public String getDataFile() {
+        return dataFile;
+    }
+
+    public String getStringsFile() {
+        return stringsFile;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public List<TalentTree> getTrees() {
+        return trees;
+    }
+
+    public void setTrees(List<TalentTree> trees) {
+        this.trees = trees;
+    }
+
+    public void setDataFile(String dataFile) {
+        this.dataFile = dataFile;
+    }
+
+    public void setStringsFile(String stringsFile) {
+        this.stringsFile = stringsFile;
+    }
+
+    public void setLanguage(String language) {
+        this.language = language;
+    }
+
+    public void setPageSize(String pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public void setOutputFile(String outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    public void setOutputStream(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public void setTreeFilter(TreeFilter treeFilter) {
+        this.treeFilter = treeFilter;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Get shared font instance - must not be changed
+     * @param baseFont base font
+     * @param size font size
+     * @return font
+     */
+    public Font getFont(BaseFont baseFont, float size) {
+        return fontCache.get(baseFont, size);
+    }
+
+    /**
+     * Get compiled rich text of localized string
+     * @param key language key
+     * @return compiled text
+     * @throws Exception
+     */
+    public RichText getRichText(String key) throws Exception {
+        return catalog.getRichText(key);
     }
 
     /**
@@ -162,100 +522,225 @@ public class PDFGenerator {
     protected PriorityQueue<AbstractPageGenerator> pageGenerators;
 
     /**
-     * Load fonts
+     * Load fonts - fonts are shared within the process and loaded when first used
      * @throws Exception
      */
     protected void loadFonts() throws Exception {
-        // try header font
-        try {
-            fontHeader = BaseFont.createFont(getClass().getResource("/fonts/LeagueGothic-Regular.otf").toString(), BaseFont.WINANSI, BaseFont.EMBEDDED);
-        } catch (Exception e) {
-            throw new Exception("Header font could not be loaded.");
-        }
+        fontRegistry = FontRegistry.getInstance();
+    }
 
-        // try regular font
-        try {
-            fontRegular = BaseFont.createFont(getClass().getResource("/fonts/LiberationSans-Regular.ttf").toString(), BaseFont.WINANSI, BaseFont.EMBEDDED);
-        } catch (Exception e) {
-            throw new Exception("Regular font could not be loaded.");
+    /**
+     * Prepare PDF generation
+     * @throws Exception
+     */
+    public void initialize() throws Exception {
+        // calculate page size
+        if (pageSize.equalsIgnoreCase("A4")) pageSizeValue = PageSize.A4;
+        else if (pageSize.equalsIgnoreCase("letter")) pageSizeValue = PageSize.LETTER;
+        else throw new Exception("Unknown page size.");
+
+        if (threads < 1) throw new Exception("Number of threads must be at least 1.");
+        if (precision < 0 || precision > OptimizingCanvas.MAX_PRECISION)
+            throw new Exception("Precision must be between 0 and " + OptimizingCanvas.MAX_PRECISION + ".");
+        if (optimize != null && !optimize.equals(OPTIMIZE_SIZE) && !optimize.equals(OPTIMIZE_SPEED))
+            throw new Exception("Unknown optimization " + optimize + " (size or speed).");
+        if (split != null) {
+            if (!split.equals(SplitGenerator.SPLIT_TREE) && !split.equals(SplitGenerator.SPLIT_GROUP))
+                throw new Exception("Unknown split mode " + split + " (tree or group).");
+            if (stream) throw new Exception("Split mode can not be combined with --stream.");
+            if (reportFile != null) throw new Exception("Split mode can not be combined with --report.");
+        }
+        if (plan != null) {
+            if (only == null && treeFilter == null) throw new Exception("Plan mode needs the trees of the character, set using --only.");
+            if (stream) throw new Exception("Plan mode can not be combined with --stream.");
+        }
+        if (rosterFile != null) {
+            if (split != null) throw new Exception("Roster mode can not be combined with --split.");
+            if (stream) throw new Exception("Roster mode can not be combined with --stream.");
         }
 
-        // try bold font
-        try {
-            fontBold = BaseFont.createFont(getClass().getResource("/fonts/LiberationSans-Bold.ttf").toString(), BaseFont.WINANSI, BaseFont.EMBEDDED);
-        } catch (Exception e) {
-            throw new Exception("Bold font could not be loaded.");
+        // selection of command line, if not set by job
+        if (treeFilter == null && only != null) treeFilter = TreeFilter.parse(only);
+
+        if (reportFile != null) report = new RenderReport();
+        RenderReport.Stopwatch stopwatch = startPhase();
+
+        // load strings and trees from snapshot, if it is up to date
+        if (snapshotFile != null && catalog == null && trees == null) {
+            if (stream) throw new Exception("Streaming mode can not be combined with --snapshot.");
+            JfrEvents.DataLoad dataEvent = JfrEvents.beginDataLoad();
+            List<String> sources = getSourceDescriptions();
+            Snapshot snapshot;
+            try {
+                snapshot = Snapshot.read(new File(snapshotFile), sources);
+            } catch (Exception e) {
+                if (verbose) System.err.println("Snapshot " + snapshotFile + " could not be read ("
+                        + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()) + "), compiling again.");
+                snapshot = null;
+            }
+            if (snapshot == null) {
+                snapshot = compile(new File(snapshotFile));
+                if (verbose) getConsole().println("Snapshot " + snapshotFile + " written.");
+            }
+            catalog = snapshot.getCatalog();
+            trees = snapshot.getTrees();
+            printWarnings(trees);
+            endPhase("snapshot", stopwatch);
+            if (dataEvent != null) dataEvent.finish(snapshotFile, trees.size());
         }
 
-        // try regular condensed font
-        try {
-            fontCondensedRegular = BaseFont.createFont(getClass().getResource("/fonts/LiberationSansNarrow-Regular.ttf").toString(), BaseFont.WINANSI, BaseFont.EMBEDDED);
-        } catch (Exception e) {
-            throw new Exception("Regular font could not be loaded.");
+        // load properties file, if not shared with other generators
+        if (catalog == null) {
+            stopwatch = startPhase();
+            catalog = loadStrings();
+            endPhase("strings", stopwatch);
         }
 
-        // try bold condensed font
-        try {
-            fontCondensedBold = BaseFont.createFont(getClass().getResource("/fonts/LiberationSansNarrow-Bold.ttf").toString(), BaseFont.WINANSI, BaseFont.EMBEDDED);
-        } catch (Exception e) {
-            throw new Exception("Bold font could not be loaded.");
+        // load data file, if not shared with other generators - streaming mode reads it when generating
+        if (stream) {
+            if (threads > 1 || cacheDir != null) throw new Exception("Streaming mode can not be combined with --threads or --cache-dir.");
+        } else if (trees == null) {
+            stopwatch = startPhase();
+            JfrEvents.DataLoad dataEvent = JfrEvents.beginDataLoad();
+            trees = loadTrees();
+            printWarnings(trees);
+            endPhase("data", stopwatch);
+            if (dataEvent != null) dataEvent.finish(dataFile != null ? dataFile : "data.yaml", trees.size());
         }
 
-        // try symbol font
+        // load fitted font sizes of earlier runs
+        if (fitCacheFile != null) fitCache.load(new File(fitCacheFile));
+
+        // open page cache, if not shared with other generators
+        if (pageCache == null && cacheDir != null) pageCache = new PageCache(new File(cacheDir));
+    }
+
+    /**
+     * load strings file
+     * @return loaded strings
+     * @throws Exception
+     */
+    protected StringCatalog loadStrings() throws Exception {
+        URL url = getStringsUrl();
+        InputStream langStream = new BufferedInputStream(url.openStream());
         try {
-            fontSymbol = BaseFont.createFont(getClass().getResource("/fonts/EotE_Symbol-Regular_v1.otf").toString(), BaseFont.WINANSI, BaseFont.EMBEDDED);
+            Properties strings = new Properties();
+            strings.load(new InputStreamReader(langStream, "utf-8")); // read as UTF-8 encoded stream
+            langStream.close();
+            return new StringCatalog(strings, getStringsLocale(url, strings));
         } catch (Exception e) {
-            throw new Exception("Symbol font could not be loaded.");
+            throw new Exception("Error loading language file:" + e.getMessage());
         }
     }
 
     /**
-     * Prepare PDF generation
+     * @return location of strings file
      * @throws Exception
      */
-    public void initialize() throws Exception {
-        // calculate page size
-        if (pageSize.equalsIgnoreCase("A4")) pageSizeValue = PageSize.A4;
-        else if (pageSize.equalsIgnoreCase("letter")) pageSizeValue = PageSize.LETTER;
-        else throw new Exception("Unknown page size.");
-
-        // load properties file
-        InputStream langStream;
+    protected URL getStringsUrl() throws Exception {
         if (stringsFile != null) {
             File langFile = new File(stringsFile);
             if (!langFile.exists()) throw new Exception("Language file " + stringsFile + " not found.");
-            langStream = new BufferedInputStream(new FileInputStream(langFile));
-        } else {// load default
-            // language from parameters
-            if (this.language == null) this.language = Locale.getDefault().getLanguage();
-            // resource for current locale?
-            URL langResource = getClass().getResource("/strings_" + this.language + ".txt");
-            if (langResource == null) langResource = getClass().getResource("/strings_en.txt"); // fallback to English
-            langStream = langResource.openStream();
+            return langFile.toURI().toURL();
         }
-        try {
-            strings = new Properties();
-            strings.load(new InputStreamReader(langStream, "utf-8")); // read as UTF-8 encoded stream
-            langStream.close();
-        } catch (Exception e) {
-            throw new Exception("Error loading language file:" + e.getMessage());
+        // load default
+        // language from parameters
+        if (this.language == null) this.language = Locale.getDefault().getLanguage();
+        // resource for current locale?
+        URL langResource = getClass().getResource("/strings_" + this.language + ".txt");
+        if (langResource == null) langResource = getClass().getResource("/strings_en.txt"); // fallback to English
+        return langResource;
+    }
+
+    /**
+     * get locale of strings file for sorting: key "locale" of strings file, language of file name (strings_xx.txt) or
+     * default locale
+     * @param url location of strings file
+     * @param strings loaded strings
+     * @return locale
+     */
+    protected Locale getStringsLocale(URL url, Properties strings) {
+        String tag = strings.getProperty("locale");
+        if (tag == null || tag.isEmpty()) {
+            Matcher matcher = Pattern.compile("strings_([a-zA-Z]{2,3}([_-][a-zA-Z]{2})?)\\.[^/]*$").matcher(url.getPath());
+            if (!matcher.find()) return Locale.getDefault();
+            tag = matcher.group(1);
         }
+        return Locale.forLanguageTag(tag.replace('_', '-'));
+    }
 
-        // load data file from yaml
-        InputStream dataStream;
-        if (dataFile != null) {
-            File dFile = new File(dataFile);
-            if (!dFile.exists()) throw new Exception("Data file " + stringsFile + " not found.");
-            dataStream = new BufferedInputStream(new FileInputStream(dFile));
-        } else {// load default
-            dataStream = getClass().getResourceAsStream("/data.yaml");
+    /**
+     * @return location of data file
+     * @throws Exception
+     */
+    protected URL getDataUrl() throws Exception {
+        if (dataFile == null) return getClass().getResource("/data.yaml");
+        File file = new File(dataFile);
+        if (!file.exists()) throw new Exception("Data file " + dataFile + " not found.");
+        return file.toURI().toURL();
+    }
+
+    /**
+     * @return descriptions of data and strings file to check snapshots against
+     * @throws Exception
+     */
+    protected List<String> getSourceDescriptions() throws Exception {
+        return Arrays.asList(Snapshot.describe(getDataUrl()), Snapshot.describe(getStringsUrl()));
+    }
+
+    /**
+     * compile all trees, strings and header properties to binary snapshot
+     * @param file snapshot file
+     * @return snapshot written
+     * @throws Exception
+     */
+    public Snapshot compile(File file) throws Exception {
+        List<String> sources = getSourceDescriptions();
+        StringCatalog catalog = loadStrings();
+        // snapshot keeps all trees, selections are applied when rendering
+        List<TalentTree> trees = new TreeLoader(null).load(TreeLoader.readDataFile(dataFile));
+
+        // split header properties in advance
+        for (Map.Entry<String, String> entry : catalog.getStrings().entrySet()) {
+            String key = entry.getKey();
+            if (!key.endsWith("Data") || key.length() == 4) continue;
+            String talent = key.substring(0, key.length() - 4);
+            if (entry.getValue().split("\\|").length >= 4) catalog.getHeaderProperties(talent);
         }
-        try {
-            Yaml yaml = new Yaml();
-            data = yaml.loadAll(dataStream);
-        } catch (Exception e) {
-            throw new Exception("Error loading data file:" + e.getMessage());
+
+        Snapshot snapshot = new Snapshot(trees, catalog);
+        snapshot.write(file, sources);
+        return snapshot;
+    }
+
+    /**
+     * print problems found when compiling graphs of trees, e.g. boxes that can not be reached - in verbose mode only
+     * @param trees loaded trees
+     */
+    protected void printWarnings(List<TalentTree> trees) {
+        if (!verbose) return;
+        for (TalentTree tree : trees)
+            for (String warning : tree.getGraph().getWarnings())
+                System.err.println("Warning in data of " + tree.getId() + ": " + warning);
+    }
+
+    /**
+     * load data file from yaml and compile trees - trees not selected are skipped
+     * @return list of trees
+     * @throws Exception
+     */
+    protected List<TalentTree> loadTrees() throws Exception {
+        if (treeFilter == null) return new TreeLoader(null).load(TreeLoader.readDataFile(dataFile));
+
+        // parse selected documents only, found using the index of the data file
+        DocumentIndex index = DocumentIndex.open(dataFile);
+        TreeLoader loader = new TreeLoader(treeFilter);
+        List<TalentTree> trees = new ArrayList<>();
+        for (int i : index.find(treeFilter)) {
+            TalentTree tree = index.loadTree(i, loader);
+            if (tree != null) trees.add(tree);
         }
+        return trees;
     }
 
     /**
@@ -263,11 +748,129 @@ public class PDFGenerator {
      * @throws Exception
      */
     public void generate() throws Exception {
+        // two passes over data file, keeping a single document in memory only
+        if (stream) {
+            createPDFStreaming();
+            if (fitCacheFile != null) fitCache.save(new File(fitCacheFile));
+            saveReport();
+            recordOutputSize();
+            return;
+        }
+
         // create and sort generator objects
+        RenderReport.Stopwatch stopwatch = startPhase();
+        JfrEvents.Sort sortEvent = JfrEvents.beginSort();
         createSortedList();
+        if (pageGenerators.isEmpty()) throw new Exception("No talent trees selected.");
+        endPhase("sort", stopwatch);
+        if (sortEvent != null) sortEvent.finish(pageGenerators.size());
 
         // call PDF generation
         createPDF();
+
+        // keep fitted font sizes for next run
+        if (fitCacheFile != null) fitCache.save(new File(fitCacheFile));
+        saveReport();
+        recordOutputSize();
+    }
+
+    /**
+     * keep size of output file written - size without optimization is measured if a report is requested only
+     * @throws Exception
+     */
+    protected void recordOutputSize() throws Exception {
+        outputSize = outputStream == null && !STDOUT.equals(outputFile) ? new File(getFileName()).length() : -1;
+        if (outputSize >= 0 && report != null && OPTIMIZE_SIZE.equals(optimize)) unoptimizedSize = measureUnoptimizedSize();
+    }
+
+    /**
+     * render the same trees again without optimization, counting the bytes written only - pages are taken from the same
+     * page cache and use the same fonts, texts are fitted into a cache of their own, so statistics of the fit cache are
+     * not changed
+     * @return size of PDF without optimization
+     * @throws Exception
+     */
+    protected long measureUnoptimizedSize() throws Exception {
+        PDFGenerator job = new PDFGenerator();
+        job.setCatalog(catalog);
+        job.setTrees(trees);
+        job.setDataFile(dataFile);
+        job.stream = stream;
+        job.setTreeFilter(treeFilter);
+        job.setPageSize(pageSize);
+        job.setPrecision(precision);
+        job.setThreads(threads);
+        job.setPool(pool);
+        job.setPageCache(pageCache);
+        job.setVerbose(false);
+        job.initialize();
+
+        CountingOutputStream out = new CountingOutputStream();
+        job.setOutputStream(out);
+        job.generate();
+        return out.getCount();
+    }
+
+    /**
+     * @return stream to print progress and summaries to - standard error, if the PDF is written to standard output
+     */
+    public PrintStream getConsole() {
+        return STDOUT.equals(outputFile) ? System.err : System.out;
+    }
+
+    /**
+     * @return summary of output file written, null if written to a stream
+     * @throws Exception
+     */
+    public String getOutputSummary() throws Exception {
+        if (outputSize < 0) return null;
+        String summary = "Output: " + getFileName() + ", " + (outputSize + 1023) / 1024 + " KB";
+        if (unoptimizedSize > 0) {
+            long saved = unoptimizedSize - outputSize;
+            summary += " (optimized for " + optimize + ", " + (unoptimizedSize + 1023) / 1024 + " KB unoptimized, ";
+            if (saved <= 0) return summary + "no saving)";
+            return summary + (saved + 1023) / 1024 + " KB or " + Math.round(saved * 100.0 / unoptimizedSize) + "% saved)";
+        }
+        return summary + (optimize != null ? " (optimized for " + optimize + ")" : "");
+    }
+
+    /**
+     * start measuring phase, if a report is created
+     * @return stop watch or null
+     */
+    protected RenderReport.Stopwatch startPhase() {
+        return report != null ? report.startPhase() : null;
+    }
+
+    /**
+     * end measuring phase, if a report is created
+     * @param name name of phase
+     * @param stopwatch stop watch returned by startPhase
+     */
+    protected void endPhase(String name, RenderReport.Stopwatch stopwatch) {
+        if (report != null) report.endPhase(name, stopwatch);
+    }
+
+    /**
+     * write report, if requested - fonts are loaded when first used, so their loading time is added at the end
+     * @throws Exception
+     */
+    protected void saveReport() throws Exception {
+        if (report == null) return;
+        report.addPhase("fonts", fontRegistry.getLoadTimeMillis() * 1000000L);
+        report.save(new File(reportFile));
+    }
+
+    /**
+     * @return selected trees in sort order
+     * @throws Exception
+     */
+    public List<TalentTree> getSortedTrees() throws Exception {
+        createSortedList();
+        if (pageGenerators.isEmpty()) throw new Exception("No talent trees selected.");
+        List<TalentTree> sorted = new ArrayList<>(pageGenerators.size());
+        while (pageGenerators.size() > 0) sorted.add(pageGenerators.poll().tree);
+        return sorted;
     }
 
     /**
@@ -279,28 +882,45 @@ public class PDFGenerator {
         this.pageGenerators = new PriorityQueue<>();
 
         // iterate data to create objects
-        for (Object o : this.data) {
-            Map data = (Map) o; // to map
-            // check type
-            String type = (String) data.get("type");
-            if (type == null) throw new Exception("The following data contained no type: " + o.toString());
-            // try to load class and create instance
-            AbstractPageGenerator pageGenerator;
+        for (TalentTree tree : this.trees) {
+            AbstractPageGenerator pageGenerator = createPageGenerator(tree);
+            if (pageGenerator != null) this.pageGenerators.add(pageGenerator);
+        }
+    }
 
-            try {
-                Class c = Class.forName(type);
-                pageGenerator = (AbstractPageGenerator) c.newInstance();
-                if (pageGenerator == null) throw new Exception();
-            }  catch (Exception e) {
-                throw new Exception("Type " + type + " not valid in following data: " + o.toString());
-            }
+    /**
+     * create page generator for tree
+     * @param tree compiled tree
+     * @return page generator or null, if not selected
+     * @throws Exception
+     */
+    protected AbstractPageGenerator createPageGenerator(TalentTree tree) throws Exception {
+        // selected?
+        if (treeFilter != null && !treeFilter.matches(tree.getId())) return null;
+        String type = tree.getType();
+        // try to load class and create instance
+        AbstractPageGenerator pageGenerator;
 
-            // set data
-            pageGenerator.setGenerator(this);
-            pageGenerator.setData(data);
+        try {
+            Class<?> c = Class.forName(type);
+            pageGenerator = (AbstractPageGenerator) c.getDeclaredConstructor().newInstance();
+            if (pageGenerator == null) throw new Exception();
+        }  catch (Exception e) {
+            throw new Exception("Type " + type + " not valid in data of " + tree.getId() + ".");
+        }
 
-            this.pageGenerators.add(pageGenerator);
+        // set data
+        pageGenerator.setGenerator(this);
+        pageGenerator.setTree(tree);
+
+        // check data needed by generator type before rendering anything
+        try {
+            pageGenerator.validate();
+        } catch (Exception e) {
+            throw new Exception("Error in data of " + tree.getId() + ": " + e.getMessage());
         }
+
+        return pageGenerator;
     }
 
     /**
@@ -308,37 +928,340 @@ public class PDFGenerator {
      * @throws Exception
      */
     protected void createPDF() throws Exception {
+        // render pages in parallel or use page cache?
+        if (threads > 1 || pageCache != null) {
+            createPDFParallel();
+            return;
+        }
+
         // create PDF
-        Document document = new Document(pageSizeValue, marginHorizontal, marginHorizontal, marginVertical, marginVertical);
-        PdfWriter writer = PdfWriter.getInstance(document, new FileOutputStream(getFileName()));
+        Document document = createDocument();
+        PdfWriter writer = PdfWriter.getInstance(document, openOutput());
+        writer.setCloseStream(outputStream == null);
+        configureWriter(writer);
         document.open();
-
-        document.addAuthor("Maximilian Kalus");
-        document.addCreator("Star Wars Talent Tree Generator, see https://github.com/mkalus/sw-talenttree-generator");
-        document.addTitle(strings.getProperty("PDFTitle", "Star Wars Talent Trees"));
+        addMetaData(document);
+        TemplateCache templateCache = new TemplateCache();
 
         // iterate pageGenerators to generate PDF
+        RenderReport.Stopwatch stopwatch = startPhase();
         while (this.pageGenerators.size() > 0) {
+            checkInterrupted();
+
             // get element from queue
             AbstractPageGenerator pageGenerator = this.pageGenerators.poll();
 
-            // new page, if needed
-            document.newPage();
-            PdfContentByte canvas = writer.getDirectContent();
+            // generate page
+            renderPage(pageGenerator, document, writer, templateCache);
+            // page is written when the next one is begun - push finished pages out
+            writer.flush();
 
-            // fill data
-            pageGenerator.setDocument(document);
-            pageGenerator.setWriter(writer);
-            pageGenerator.setCanvas(canvas);
+            if (verbose) getConsole().println("Generated: " + pageGenerator.getId());
+        }
+        endPhase("render", stopwatch);
 
-            // generate page
-            pageGenerator.generate();
+        // close and write document
+        stopwatch = startPhase();
+        JfrEvents.DocumentWrite writeEvent = JfrEvents.beginDocumentWrite();
+        document.close();
+        endPhase("close", stopwatch);
+        if (writeEvent != null) writeEvent.finish("close");
+    }
+
+    /**
+     * PDF generation with bounded memory: the first pass over the data file creates sort keys only, the second one
+     * parses, renders and releases one document at a time
+     * @throws Exception
+     */
+    protected void createPDFStreaming() throws Exception {
+        DocumentIndex index = DocumentIndex.open(dataFile);
+        TreeLoader loader = new TreeLoader(treeFilter);
+
+        // first pass: sort keys and document numbers
+        RenderReport.Stopwatch stopwatch = startPhase();
+        JfrEvents.Sort sortEvent = JfrEvents.beginSort();
+        List<SortEntry> entries = new ArrayList<>();
+        for (int i : index.find(treeFilter)) {
+            TalentTree tree = index.loadTree(i, loader);
+            if (tree == null) continue; // empty document or not selected
+            printWarnings(Collections.singletonList(tree));
+            AbstractPageGenerator pageGenerator = createPageGenerator(tree);
+            if (pageGenerator != null) entries.add(new SortEntry(pageGenerator.getCollationKey(), i));
+        }
+        if (entries.isEmpty()) throw new Exception("No talent trees selected.");
+        Collections.sort(entries);
+        endPhase("sort", stopwatch);
+        if (sortEvent != null) sortEvent.finish(entries.size());
+
+        // second pass: render pages in sort order
+        Document document = createDocument();
+        PdfWriter writer = PdfWriter.getInstance(document, openOutput());
+        writer.setCloseStream(outputStream == null);
+        configureWriter(writer);
+        document.open();
+        addMetaData(document);
+        TemplateCache templateCache = new TemplateCache();
+
+        stopwatch = startPhase();
+        for (SortEntry entry : entries) {
+            checkInterrupted();
+
+            AbstractPageGenerator pageGenerator = createPageGenerator(index.loadTree(entry.index, loader));
+            renderPage(pageGenerator, document, writer, templateCache);
+            // page is written when the next one is begun - push finished pages out
+            JfrEvents.DocumentWrite flushEvent = JfrEvents.beginDocumentWrite();
+            writer.flush();
+            if (flushEvent != null) flushEvent.finish("flush");
+
+            if (verbose) getConsole().println("Generated: " + pageGenerator.getId());
+        }
+        endPhase("render", stopwatch);
+
+        // close and write document
+        stopwatch = startPhase();
+        JfrEvents.DocumentWrite writeEvent = JfrEvents.beginDocumentWrite();
+        document.close();
+        endPhase("close", stopwatch);
+        if (writeEvent != null) writeEvent.finish("close");
+    }
 
-            System.out.println("Generated: " + pageGenerator.getId());
+    /**
+     * sort key of a document in streaming mode
+     */
+    protected static class SortEntry implements Comparable<SortEntry> {
+        protected final CollationKey sortKey;
+        protected final int index;
+
+        public SortEntry(CollationKey sortKey, int index) {
+            this.sortKey = sortKey;
+            this.index = index;
+        }
+
+        @Override
+        public int compareTo(SortEntry o) {
+            int c = sortKey.compareTo(o.sortKey);
+            return c != 0 ? c : Integer.compare(index, o.index);
+        }
+    }
+
+    /**
+     * PDF generation using multiple threads or the page cache: each page is rendered into its own single page document
+     * (or taken from the cache), the results are merged in sort order afterwards
+     * @throws Exception
+     */
+    protected void createPDFParallel() throws Exception {
+        // create render tasks in sort order
+        final List<PageRenderTask> tasks = new ArrayList<>(this.pageGenerators.size());
+        while (this.pageGenerators.size() > 0)
+            tasks.add(new PageRenderTask(this.pageGenerators.poll()));
+
+        // render all pages
+        RenderReport.Stopwatch stopwatch = startPhase();
+        try {
+            if (ForkJoinTask.inForkJoinPool()) {
+                // called within a pool already (e.g. batch job)
+                ForkJoinTask.invokeAll(tasks);
+            } else {
+                ForkJoinPool renderPool = pool != null ? pool : new ForkJoinPool(threads);
+                try {
+                    renderPool.invoke(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            invokeAll(tasks);
+                        }
+                    });
+                } finally {
+                    if (renderPool != pool) renderPool.shutdown();
+                }
+            }
+        } catch (RuntimeException e) {
+            // unwrap exceptions thrown by page generators
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+        endPhase("render", stopwatch);
+
+        // merge pages, sharing fonts and resources where possible
+        stopwatch = startPhase();
+        JfrEvents.DocumentWrite writeEvent = JfrEvents.beginDocumentWrite();
+        Document document = createDocument();
+        PdfSmartCopy copy = new PdfSmartCopy(document, openOutput());
+        copy.setCloseStream(outputStream == null);
+        configureWriter(copy);
+        document.open();
+        addMetaData(document);
+
+        for (PageRenderTask task : tasks) {
+            checkInterrupted();
+
+            PdfReader reader = new PdfReader(task.join());
+            copy.addPage(copy.getImportedPage(reader, 1));
+            copy.freeReader(reader);
+            reader.close();
+            copy.flush();
+
+            if (verbose) getConsole().println("Generated: " + task.pageGenerator.getId());
         }
 
         // close and write document
         document.close();
+        endPhase("merge", stopwatch);
+        if (writeEvent != null) writeEvent.finish("merge");
+    }
+
+    /**
+     * open stream to write document to - pages are flushed to it as soon as they are complete
+     * @return output stream set, standard output or output file stream
+     * @throws Exception
+     */
+    protected OutputStream openOutput() throws Exception {
+        if (outputStream != null) return outputStream;
+        if (STDOUT.equals(outputFile)) return FileChannelOutputStream.stdout();
+        return FileChannelOutputStream.open(new File(getFileName()));
+    }
+
+    /**
+     * apply output profile to writer, before the document is opened
+     * @param writer writer of document
+     * @throws DocumentException
+     */
+    protected void configureWriter(PdfWriter writer) throws DocumentException {
+        if (OPTIMIZE_SIZE.equals(optimize)) {
+            // PDF 1.5 with compressed cross reference and object streams
+            writer.setFullCompression();
+            writer.setCompressionLevel(PdfStream.BEST_COMPRESSION);
+        } else if (OPTIMIZE_SPEED.equals(optimize)) {
+            writer.setCompressionLevel(PdfStream.BEST_SPEED);
+        }
+    }
+
+    /**
+     * stop rendering if thread has been interrupted (e.g. timed out requests)
+     * @throws Exception
+     */
+    protected void checkInterrupted() throws Exception {
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedException("Rendering has been interrupted.");
+    }
+
+    /**
+     * create new empty document
+     * @return document
+     */
+    protected Document createDocument() {
+        return new Document(pageSizeValue, marginHorizontal, marginHorizontal, marginVertical, marginVertical);
+    }
+
+    /**
+     * add meta data to opened document
+     * @param document
+     */
+    protected void addMetaData(Document document) {
+        document.addAuthor("Maximilian Kalus");
+        document.addCreator("Star Wars Talent Tree Generator, see https://github.com/mkalus/sw-talenttree-generator");
+        String title = getStrings().get("PDFTitle");
+        document.addTitle(title == null ? "Star Wars Talent Trees" : title);
+    }
+
+    /**
+     * render a single page into document
+     * @param pageGenerator page generator
+     * @param document opened document
+     * @param writer writer of document
+     * @param templateCache template cache of writer
+     * @throws Exception
+     */
+    protected void renderPage(AbstractPageGenerator pageGenerator, Document document, PdfWriter writer, TemplateCache templateCache) throws Exception {
+        JfrEvents.PageRender event = JfrEvents.beginPageRender();
+        RenderReport.PageMetrics metrics = null;
+        long written = 0;
+        if (report != null) {
+            metrics = report.startPage(pageGenerator.getId(), pageGenerator.getClass().getSimpleName());
+            written = writer.getOs().getCounter();
+        }
+
+        // new page, if needed
+        document.newPage();
+        OptimizingCanvas canvas = new OptimizingCanvas(writer.getDirectContent(), precision);
+
+        // fill data
+        pageGenerator.setDocument(document);
+        pageGenerator.setWriter(writer);
+        pageGenerator.setCanvas(canvas);
+        pageGenerator.setTemplateCache(templateCache);
+        pageGenerator.setMetrics(metrics);
+
+        // generate page
+        pageGenerator.generate();
+        canvas.flush();
+
+        if (metrics != null) {
+            // write page now to measure its size - the next page would begin a new page anyway
+            document.newPage();
+            metrics.endSection("write");
+            metrics.end(writer.getOs().getCounter() - written);
+        }
+        if (event != null) event.finish(pageGenerator.getId(), pageGenerator.getClass().getName());
+    }
+
+    /**
+     * render a single page into its own in-memory document
+     * @param pageGenerator page generator
+     * @return PDF bytes containing a single page
+     * @throws Exception
+     */
+    protected byte[] renderSinglePage(AbstractPageGenerator pageGenerator) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Document document = createDocument();
+        PdfWriter writer = PdfWriter.getInstance(document, out);
+        configureWriter(writer);
+        document.open();
+        addMetaData(document);
+
+        renderPage(pageGenerator, document, writer, new TemplateCache());
+
+        document.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * get single page document from page cache, render and cache it if needed
+     * @param pageGenerator page generator
+     * @return PDF bytes containing a single page
+     * @throws Exception
+     */
+    protected byte[] renderCachedPage(AbstractPageGenerator pageGenerator) throws Exception {
+        String structureKey = pageCache.createStructureKey(pageGenerator, pageSizeValue, optimize + ":" + precision);
+        byte[] bytes = pageCache.get(structureKey, getStrings());
+        if (bytes == null) {
+            bytes = renderSinglePage(pageGenerator);
+            pageCache.put(structureKey, pageGenerator.getResolvedKeys(), getStrings(), bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * Fork/join task rendering a single page
+     */
+    protected class PageRenderTask extends RecursiveTask<byte[]> {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * page to render
+         */
+        protected final AbstractPageGenerator pageGenerator;
+
+        public PageRenderTask(AbstractPageGenerator pageGenerator) {
+            this.pageGenerator = pageGenerator;
+        }
+
+        @Override
+        protected byte[] compute() {
+            try {
+                return pageCache != null ? renderCachedPage(pageGenerator) : renderSinglePage(pageGenerator);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 
     /**
@@ -346,7 +1269,9 @@ public class PDFGenerator {
      * @return file name to write
      */
     protected String getFileName() {
-        String fileName = strings.getProperty("FileName");
+        if (outputFile != null) return outputFile;
+
+        String fileName = getStrings().get("FileName");
         if (fileName == null || fileName.length() == 0) fileName = "out";
 
         // TODO: special file names
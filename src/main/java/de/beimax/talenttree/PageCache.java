@@ -0,0 +1,384 @@
+package de.beimax.talenttree;
+
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.Version;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.CodeSource;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * On-disk cache of rendered pages, each page is kept as a single page PDF.
+ *
+ * Pages are identified in two steps: the structure key covers the page's data, page size, fonts and generator code
+ * (all classes of the generator and the iText version).
+ * The strings keys resolved while rendering are stored in a .deps file under the structure key - the content key adds
+ * the current values of these strings. Editing a string thus invalidates exactly those pages using it. Thread safe.
+ */
+public class PageCache {
+    /**
+     * cache format version - increase to invalidate existing caches
+     */
+    private static final int VERSION = 3;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * default limit of cache size in bytes
+     */
+    public static final long MAX_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * default time after which entries not used are removed, in milliseconds
+     */
+    public static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+
+    /**
+     * cache directory
+     */
+    private final File dir;
+
+    /**
+     * identity of fonts
+     */
+    private final String fontSetId;
+
+    /**
+     * classes hashed if the generator's code can not be read as a whole - code used to render pages
+     */
+    private static final Class<?>[] RENDER_CLASSES = {AbstractPageGenerator.class, PageGeneratorSimple.class,
+            PageGeneratorCareer.class, PageGeneratorForce.class, PageGeneratorSignature.class, PDFGenerator.class,
+            RichText.class, FitCache.class, FontCache.class, OptimizingCanvas.class, TemplateCache.class,
+            TalentCell.class, TalentTree.class};
+
+    /**
+     * hash of generator code, computed once
+     */
+    private static volatile String codeHash;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * number of outdated files removed when opening the cache
+     */
+    private int removed;
+
+    /**
+     * Constructor
+     * @param dir cache directory, created if needed
+     * @throws Exception
+     */
+    public PageCache(File dir) throws Exception {
+        this(dir, MAX_SIZE, MAX_AGE);
+    }
+
+    /**
+     * Constructor - entries are never updated in place, so changed code, data or strings leave outdated files behind;
+     * files not used for some time are removed, as are the least recently used ones exceeding the size limit
+     * @param dir cache directory, created if needed
+     * @param maxSize size limit of cache in bytes
+     * @param maxAge time in milliseconds after which entries not used are removed
+     * @throws Exception
+     */
+    public PageCache(File dir, long maxSize, long maxAge) throws Exception {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new Exception("Cache directory " + dir + " could not be created.");
+        this.dir = dir;
+        prune(maxSize, maxAge);
+
+        // fonts are identified by resource and size
+        StringBuilder sb = new StringBuilder();
+        for (FontRegistry.Face face : FontRegistry.Face.values()) {
+            sb.append(face.resource).append(':');
+            URL url = PageCache.class.getResource(face.resource);
+            if (url != null) {
+                URLConnection connection = url.openConnection();
+                sb.append(connection.getContentLengthLong()).append(':').append(connection.getLastModified());
+            }
+            sb.append(',');
+        }
+        fontSetId = sb.toString();
+    }
+
+    /**
+     * create structure key of page
+     * @param page page generator
+     * @param pageSize page size of document
+     * @param profile output profile (fonts, compression and precision of coordinates differ)
+     * @return structure key
+     * @throws Exception
+     */
+    public String createStructureKey(AbstractPageGenerator page, Rectangle pageSize, String profile) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        sb.append(VERSION).append('|').append(page.getClass().getName()).append('|').append(getCodeHash())
+                .append('|').append(pageSize.getWidth()).append('x').append(pageSize.getHeight())
+                .append('|').append(fontSetId).append('|').append(profile).append('|');
+        sb.append(page.tree);
+        return hash(sb.toString());
+    }
+
+    /**
+     * get cached page
+     * @param structureKey structure key of page
+     * @param strings current strings
+     * @return PDF bytes of page or null, if not cached or outdated
+     */
+    public byte[] get(String structureKey, Map<String, String> strings) {
+        File deps = new File(dir, structureKey + ".deps");
+        try {
+            if (deps.exists()) {
+                List<String> keys = Files.readAllLines(deps.toPath(), UTF8);
+                File page = new File(dir, createContentKey(structureKey, keys, strings) + ".pdf");
+                if (page.exists()) {
+                    byte[] bytes = Files.readAllBytes(page.toPath());
+                    // mark entry as used, so it is kept when pruning
+                    long now = System.currentTimeMillis();
+                    page.setLastModified(now);
+                    deps.setLastModified(now);
+                    hits.incrementAndGet();
+                    return bytes;
+                }
+            }
+        } catch (Exception e) {
+            // broken entries are rendered again
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * put rendered page into cache
+     * @param structureKey structure key of page
+     * @param keys strings keys resolved while rendering
+     * @param strings current strings
+     * @param bytes PDF bytes of page
+     * @throws Exception
+     */
+    public void put(String structureKey, Collection<String> keys, Map<String, String> strings, byte[] bytes) throws Exception {
+        List<String> sortedKeys = new ArrayList<>(keys);
+        Collections.sort(sortedKeys);
+        try {
+            write(new File(dir, createContentKey(structureKey, sortedKeys, strings) + ".pdf"), bytes);
+            StringBuilder sb = new StringBuilder();
+            for (String key : sortedKeys) sb.append(key).append('\n');
+            write(new File(dir, structureKey + ".deps"), sb.toString().getBytes(UTF8));
+        } catch (Exception e) {
+            throw new Exception("Error writing page cache " + dir + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return number of pages taken from cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of pages rendered
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of outdated files removed when opening the cache
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return human readable summary of cache use
+     */
+    public String getSummary() {
+        return "Page cache: " + hits.get() + " pages cached, " + misses.get() + " pages rendered"
+                + (removed > 0 ? ", " + removed + " outdated files removed" : "");
+    }
+
+    /**
+     * remove files not used within maxAge, then the least recently used ones until the cache fits into maxSize
+     * @param maxSize size limit of cache in bytes
+     * @param maxAge time in milliseconds after which entries not used are removed
+     */
+    protected void prune(long maxSize, long maxAge) {
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return file.isFile() && (name.endsWith(".pdf") || name.endsWith(".deps") || name.endsWith(".tmp"));
+            }
+        });
+        if (files == null) return;
+
+        // newest first - modification times are read once, as they may change while sorting
+        final Map<File, Long> modified = new HashMap<>();
+        for (File file : files) modified.put(file, file.lastModified());
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(modified.get(o2), modified.get(o1));
+            }
+        });
+
+        long oldest = System.currentTimeMillis() - maxAge;
+        long size = 0;
+        for (File file : files) {
+            boolean outdated = modified.get(file) < oldest;
+            // temporary files may be written by another run right now
+            if (!outdated && !file.getName().endsWith(".tmp")) {
+                size += file.length();
+                outdated = size > maxSize;
+            }
+            if (outdated && file.delete()) removed++;
+        }
+    }
+
+    /**
+     * create content key of page
+     * @param structureKey structure key of page
+     * @param keys sorted strings keys resolved while rendering
+     * @param strings current strings
+     * @return content key
+     * @throws Exception
+     */
+    protected String createContentKey(String structureKey, List<String> keys, Map<String, String> strings) throws Exception {
+        StringBuilder sb = new StringBuilder(structureKey);
+        for (String key : keys) {
+            if (key.isEmpty()) continue;
+            String value = strings.get(key);
+            sb.append('|').append(key.length()).append(':').append(key);
+            if (value == null) sb.append('-');
+            else sb.append(value.length()).append(':').append(value);
+        }
+        return hash(sb.toString());
+    }
+
+    /**
+     * get hash of the generator's code, so any change of it invalidates the cache: all classes of the generator's
+     * package (read from its JAR or class directory) and the iText version
+     * @return hash
+     * @throws Exception
+     */
+    protected static String getCodeHash() throws Exception {
+        String hash = codeHash;
+        if (hash == null) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(Version.getInstance().getVersion().getBytes(UTF8));
+            if (!hashPackage(md))
+                for (Class<?> c : RENDER_CLASSES)
+                    try (InputStream in = c.getResourceAsStream(c.getSimpleName() + ".class")) {
+                        if (in != null) update(md, c.getName(), in);
+                    }
+            hash = new BigInteger(1, md.digest()).toString(16);
+            codeHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * hash class files of the generator's package, in order of their names
+     * @param md digest to update
+     * @return false if the location of the code is unknown
+     * @throws Exception
+     */
+    private static boolean hashPackage(MessageDigest md) throws Exception {
+        CodeSource source = PageCache.class.getProtectionDomain().getCodeSource();
+        if (source == null || source.getLocation() == null || !"file".equals(source.getLocation().getProtocol())) return false;
+        File location = new File(source.getLocation().toURI());
+        String prefix = PageCache.class.getPackage().getName().replace('.', '/') + "/";
+
+        if (location.isDirectory()) {
+            File[] files = new File(location, prefix).listFiles();
+            if (files == null) return false;
+            Arrays.sort(files);
+            for (File file : files)
+                if (file.getName().endsWith(".class"))
+                    try (InputStream in = new FileInputStream(file)) {
+                        update(md, file.getName(), in);
+                    }
+            return true;
+        }
+
+        try (JarFile jar = new JarFile(location)) {
+            SortedMap<String, JarEntry> entries = new TreeMap<>();
+            for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements(); ) {
+                JarEntry entry = e.nextElement();
+                if (entry.getName().startsWith(prefix) && entry.getName().endsWith(".class")) entries.put(entry.getName(), entry);
+            }
+            for (JarEntry entry : entries.values())
+                try (InputStream in = jar.getInputStream(entry)) {
+                    update(md, entry.getName(), in);
+                }
+        }
+        return true;
+    }
+
+    /**
+     * add name and content of class file to digest
+     * @param md digest
+     * @param name name of class file
+     * @param in content
+     * @throws IOException
+     */
+    private static void update(MessageDigest md, String name, InputStream in) throws IOException {
+        md.update(name.getBytes(UTF8));
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) md.update(buffer, 0, read);
+    }
+
+    /**
+     * @param s string to hash
+     * @return SHA-256 hash as hex string
+     * @throws Exception
+     */
+    protected static String hash(String s) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        return String.format("%064x", new BigInteger(1, md.digest(s.getBytes(UTF8))));
+    }
+
+    /**
+     * write file atomically, so concurrent readers never see partial files
+     * @param file file to write
+     * @param bytes content
+     * @throws IOException
+     */
+    protected void write(File file, byte[] bytes) throws IOException {
+        File temp = File.createTempFile("page", ".tmp", dir);
+        try {
+            Files.write(temp.toPath(), bytes);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
@@ -3,10 +3,10 @@ package de.beimax.talenttree;
 import com.itextpdf.text.*;
 import com.itextpdf.text.pdf.*;
 
-import java.text.Collator;
+import java.text.CollationKey;
 import java.text.MessageFormat;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * PDF Generator for Star Wars Talent sheets
@@ -30,39 +30,46 @@ import java.util.Collections;
  * Generator for default career sheets
  */
 public class PageGeneratorCareer extends PageGeneratorSimple {
+    @Override
+    public void validate() throws Exception {
+        super.validate();
+        require(tree.getSkills(), "skills");
+        require(tree.getBonusSkills(), "bonus_skills");
+    }
+
     /**
      * add general descriptive text
      * @throws Exception
      */
     protected void addDescriptiveText() throws Exception {
-        addSkillData(getLocalizedString("CareerSkills"), "skills");
-        addSkillData(MessageFormat.format(getLocalizedString("BonusSkills"), getMappedLocalizedString("subheader")), "bonus_skills");
+        addSkillData(getLocalizedString("CareerSkills"), tree.getSkills());
+        addSkillData(MessageFormat.format(getLocalizedString("BonusSkills"), getLocalizedString(tree.getSubheader())), tree.getBonusSkills());
     }
 
     /**
      * Add skill data
      * @param prefix translated prefix (printed bold) without :
-     * @param dataKey data key in YAML file, skills/bonus_skills
+     * @param skillKeys skill keys of tree
      * @throws Exception
      */
-    protected void addSkillData(String prefix, String dataKey) throws Exception {
-        Font fontRegular = new Font(generator.getFontRegular(), 10.5f);
-        Font fontBold = new Font(generator.getFontBold(), 10.5f);
+    protected void addSkillData(String prefix, List<String> skillKeys) throws Exception {
+        Font fontRegular = generator.getFont(generator.getFontRegular(), 10.5f);
+        Font fontBold = generator.getFont(generator.getFontBold(), 10.5f);
 
         // add career skills
         Phrase phrase = new Phrase();
         phrase.add(new Chunk(prefix + ": ", fontBold));
-        ArrayList<String> skills = new ArrayList<String>();
-        //noinspection unchecked
-        for (String key : (Iterable<String>) data.get(dataKey))
-            skills.add(getLocalizedString(key));
-        // sort localized
-        Collections.sort(skills, Collator.getInstance());
+        // sort localized - collation keys are created once per skill
+        StringCatalog catalog = generator.getCatalog();
+        CollationKey[] skills = new CollationKey[skillKeys.size()];
+        for (int i = 0; i < skills.length; i++)
+            skills[i] = catalog.getCollationKey(getLocalizedString(skillKeys.get(i)));
+        Arrays.sort(skills);
         // build skill list
         StringBuilder sb = new StringBuilder();
-        for (String skill : skills) {
+        for (CollationKey skill : skills) {
             if (sb.length() != 0) sb.append(", ");
-            sb.append(skill);
+            sb.append(skill.getSourceString());
         }
         phrase.add(new Chunk(sb.toString(), fontRegular));
         Paragraph p = new Paragraph(phrase);
@@ -26,10 +26,10 @@ import com.itextpdf.text.Element;
  */
 public class PageGeneratorForce extends PageGeneratorSimple {
     /**
-     * Add help/legend
+     * Draw help/legend
      * @throws Exception
      */
-    protected void addLegend() throws Exception {
+    protected void drawLegend() throws Exception {
         canvas.saveState();
 
         // draw arrows
@@ -58,7 +58,7 @@ public class PageGeneratorForce extends PageGeneratorSimple {
     protected void createSortKey() {
         try {
             StringBuilder b = new StringBuilder();
-            b.append("ZZZ05").append(getMappedLocalizedString("subheader"));
+            b.append("ZZZ05").append(getLocalizedString(tree.getSubheader()));
             mySortKey = b.toString();
         } catch (Exception e) {
             try {
@@ -5,7 +5,6 @@ import com.itextpdf.text.Element;
 import com.itextpdf.text.Font;
 import com.itextpdf.text.Paragraph;
 
-import java.util.ArrayList;
 
 /**
  * PDF Generator for Star Wars Talent sheets
@@ -29,22 +28,29 @@ import java.util.ArrayList;
  * Generator for signature skill trees (from supplements)
  */
 public class PageGeneratorSignature extends PageGeneratorSimple {
+    @Override
+    public void validate() throws Exception {
+        super.validate();
+        require(tree.getGroup(), "group");
+        if (!tree.hasSignatureNodes()) throw new Exception("Data key signature_nodes is empty!");
+    }
+
     /**
      * Create basic header
      * @throws Exception
      */
     protected void addHeader() throws Exception {
-        Font fontHeader = new Font(generator.getFontBold(), 14);
-        Font fontSubHeader = new Font(generator.getFontBold(), 18);
-        document.add(new Paragraph(getMappedLocalizedString("header"), fontHeader));
-        document.add(new Paragraph( getMappedLocalizedString("subheader"), fontSubHeader));
+        Font fontHeader = generator.getFont(generator.getFontBold(), 14);
+        Font fontSubHeader = generator.getFont(generator.getFontBold(), 18);
+        document.add(new Paragraph(getLocalizedString(tree.getHeader()), fontHeader));
+        document.add(new Paragraph(getLocalizedString(tree.getSubheader()), fontSubHeader));
     }
 
     /**
-     * Add help/legend
+     * Draw help/legend
      * @throws Exception
      */
-    protected void addLegend() throws Exception {
+    protected void drawLegend() throws Exception {
         canvas.saveState();
 
         // draw arrows
@@ -78,15 +84,8 @@ public class PageGeneratorSignature extends PageGeneratorSimple {
         canvas.saveState();
         canvas.setColorStroke(PDFGenerator.lineColor);
         canvas.setLineWidth(PDFGenerator.talentPathStroke);
-        try {
-            int col = 0;
-            for (int path : (ArrayList<Integer>) data.get("signature_nodes")) {
-                addSignatureNode(col, path);
-                col++;
-            }
-        } catch (Exception e) {
-            throw new Exception("Error while creating signature nodes in " + data.get("id") + ": " + e.getMessage());
-        }
+        for (int col = 0; col < TalentTree.COLS; col++)
+            if (tree.hasSignatureNode(col)) addSignatureNode(col);
         canvas.restoreState();
 
         // call rest of paths
@@ -96,13 +95,9 @@ public class PageGeneratorSignature extends PageGeneratorSimple {
     /**
      * draw signature node
      * @param col
-     * @param path
      * @throws Exception
      */
-    protected void addSignatureNode(int col, int path) throws Exception {
-        // ignore non valid paths
-        if (path != 1) return;
-
+    protected void addSignatureNode(int col) throws Exception {
         // calculate offsets
         float x = calculateColOffset(col);
         float y = calculateRowOffset(-1);
@@ -159,7 +154,7 @@ public class PageGeneratorSignature extends PageGeneratorSimple {
     protected void createSortKey() {
         try {
             StringBuilder b = new StringBuilder();
-            b.append(getMappedLocalizedString("group")).append("05").append(getMappedLocalizedString("subheader"));
+            b.append(getLocalizedString(tree.getGroup())).append("05").append(getLocalizedString(tree.getSubheader()));
             mySortKey = b.toString();
         } catch (Exception e) {
             try {
@@ -1,15 +1,13 @@
 package de.beimax.talenttree;
 
 import com.itextpdf.text.*;
+import com.itextpdf.text.pdf.PdfContentByte;
 import com.itextpdf.text.pdf.PdfPCell;
 import com.itextpdf.text.pdf.PdfPTable;
+import com.itextpdf.text.pdf.PdfTemplate;
 
-import java.text.Collator;
 import java.text.MessageFormat;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * PDF Generator for Star Wars Talent sheets
@@ -33,20 +31,48 @@ import java.util.regex.Pattern;
  * Default generator for generic pages
  */
 public class PageGeneratorSimple extends AbstractPageGenerator {
+    /**
+     * font sizes tried when fitting talent texts into boxes, largest first
+     */
+    protected static final float[] talentTextSizes = {10f, 9.5f, 9f, 8.5f, 8f, 7.5f};
+
+    /**
+     * font size and number of text layouts of the talent text fitted last, layouts are 0 for cached sizes
+     */
+    protected float fittedSize;
+    protected int fittedLayouts;
+
+    /**
+     * cross off shapes drawn, per field of the grid (row * TalentTree.COLS + col)
+     */
+    protected final CrossOff[] crossOffs = new CrossOff[TalentTree.ROWS * TalentTree.COLS];
+
+    @Override
+    public void validate() throws Exception {
+        require(tree.getHeader(), "header");
+        require(tree.getSubheader(), "subheader");
+    }
+
     @Override
     public void generate() throws Exception {
         // add header and info paragraphs
         addLegend();
+        endSection("legend");
         addHeader();
+        endSection("header");
         addDescriptiveText();
+        endSection("text");
 
         // add talent paths
         addTalentPaths();
+        endSection("paths");
         // add talents
         addTalents();
+        endSection("talents");
 
         // write footer
         addFooter();
+        endSection("footer");
     }
 
     /**
@@ -54,8 +80,8 @@ public class PageGeneratorSimple extends AbstractPageGenerator {
      * @throws Exception
      */
     protected void addHeader() throws Exception {
-        Font fontHeader = new Font(generator.getFontBold(), 18);
-        document.add(new Paragraph(getMappedLocalizedString("header") + ": " + getMappedLocalizedString("subheader"), fontHeader));
+        Font fontHeader = generator.getFont(generator.getFontBold(), 18);
+        document.add(new Paragraph(getLocalizedString(tree.getHeader()) + ": " + getLocalizedString(tree.getSubheader()), fontHeader));
     }
 
     /**
@@ -63,10 +89,10 @@ public class PageGeneratorSimple extends AbstractPageGenerator {
      * @throws Exception
      */
     protected void addDescriptiveText() throws Exception {
-        Object key = data.get("descriptiveText");
+        String key = tree.getDescriptiveText();
         // generic description
         if (key != null) {
-            Paragraph p = new Paragraph(parseTextProperty((String) key, 10f, false));
+            Paragraph p = new Paragraph(parseTextProperty(key, 10f, false));
             p.setSpacingBefore(5f); // add some space before to make it look nicer
             document.add(p);
         }
@@ -77,6 +103,26 @@ public class PageGeneratorSimple extends AbstractPageGenerator {
      * @throws Exception
      */
     protected void addLegend() throws Exception {
+        // legend only differs by generator type
+        String templateKey = "legend:" + getClass().getName();
+        PdfTemplate template = templateCache.get(templateKey);
+        if (template == null) {
+            template = beginTemplate(getPageWidth(), getPageHeight());
+            try {
+                drawLegend();
+            } finally {
+                endTemplate();
+            }
+            templateCache.put(templateKey, template);
+        }
+        canvas.addTemplate(template, 0, 0);
+    }
+
+    /**
+     * Draw help/legend
+     * @throws Exception
+     */
+    protected void drawLegend() throws Exception {
         canvas.saveState();
 
         // draw arrows
@@ -190,18 +236,9 @@ public class PageGeneratorSimple extends AbstractPageGenerator {
         canvas.saveState();
         canvas.setColorStroke(PDFGenerator.lineColor);
         canvas.setLineWidth(PDFGenerator.talentPathStroke);
-        try {
-            int row = 0;
-            for (Object oRow : (ArrayList) data.get("talent_paths")) {
-                int col = 0;
-                for (int path : (ArrayList<Integer>) oRow) {
-                    addTalentPath(row, col, path);
-                    col++;
-                }
-                row++;
-            }
-        } catch (Exception e) {
-            throw new Exception("Error while creating talent paths in " + data.get("id") + ": " + e.getMessage());
+        for (int row = 0; row < tree.getPathRowCount(); row++) {
+            for (int paths = tree.getPaths(row), col = 0; paths != 0; paths >>>= 1, col++)
+                if ((paths & 1) != 0) addTalentPath(row, col);
         }
         canvas.restoreState();
     }
@@ -210,13 +247,9 @@ public class PageGeneratorSimple extends AbstractPageGenerator {
      * draw paths between talents
      * @param row
      * @param col
-     * @param path
      * @throws Exception
      */
-    protected void addTalentPath(int row, int col, int path) throws Exception {
-        // ignore non valid paths
-        if (path != 1) return;
-
+    protected void addTalentPath(int row, int col) throws Exception {
         // calculate offsets
         float x = calculateColOffset(col);
         float y = calculateRowOffset((int) Math.floor(row / 2));
@@ -245,40 +278,10 @@ public class PageGeneratorSimple extends AbstractPageGenerator {
      * @throws Exception
      */
     protected void addTalents() throws Exception {
-        // prepare regex patters
-        Pattern multiColsPattern = Pattern.compile("\\*([1-4])");
-        Pattern customCostPattern = Pattern.compile("\\|([0-9]+)");
-
-        // add talents
-        try {
-            int row = 0;
-            for (Object oRow : (ArrayList) data.get("talents")) {
-                int col = 0;
-                for (String talent : (ArrayList<String>) oRow) {
-                    // parse talent string
-                    int multiCols = 1;
-                    int customCost = -1;
-                    // first find multiple columns
-                    Matcher matcher = multiColsPattern.matcher(talent);
-                    if (matcher.find()) {
-                        // found multi column directive
-                        multiCols = new Integer(matcher.group(1));
-                        talent = matcher.replaceAll("");
-                    }
-                    // then find custom cost
-                    matcher = customCostPattern.matcher(talent);
-                    if (matcher.find()) {
-                        // found multi column directive
-                        customCost = new Integer(matcher.group(1));
-                        talent = matcher.replaceAll("");
-                    }
-                    addTalent(row, col, talent, multiCols, customCost);
-                    col += multiCols;
-                }
-                row++;
-            }
-        } catch (Exception e) {
-            throw new Exception("Error while creating talent list in " + data.get("id") + ": " + e.getMessage());
+        // add talents - cell specs have been decoded when loading
+        for (int i = 0; i < tree.getCellCount(); i++) {
+            TalentCell cell = tree.getCell(i);
+            addTalent(cell.getRow(), cell.getCol(), cell.getKey(), cell.getSpan(), cell.getCost());
         }
     }
 
@@ -291,6 +294,8 @@ public class PageGeneratorSimple extends AbstractPageGenerator {
      * @param customCost custom cost of talent (instead of default) - 0 means box will not be printed
      */
     protected void addTalent(int row, int col, String key, int multiCols, int customCost) throws Exception {
+        JfrEvents.TalentBox event = JfrEvents.beginTalentBox();
+
         // get data
         HeaderProperties headerProperties = parseHeaderProperty(key);
 
@@ -310,22 +315,25 @@ public class PageGeneratorSimple extends AbstractPageGenerator {
         float talentBoxWidth = PDFGenerator.talentBoxWidth * multiCols + calculateHorizontalSpacing() * (multiCols-1);
         float talentBoxHeight = PDFGenerator.talentBoxHeight;
 
-        // draw shapes
-        canvas.saveState();
-        // draw outer rectangle
-        drawTalentRectangle(bgColor, x, y, talentBoxWidth, talentBoxHeight);
-        // draw left footer shape
+        // draw shapes - they only depend on box size and talent type, so they are shared between talents
         float yFooterBoxOffset = y - talentBoxHeight + PDFGenerator.talentBoxStroke;
-        if (customCost != 0) {
-            drawFooterShape(bgColor, x + PDFGenerator.wedgeOffset + PDFGenerator.talentBoxStroke, y - talentBoxHeight + PDFGenerator.talentBoxStroke, 25);
+        String templateKey = "shapes:" + multiCols + "|" + (customCost != 0) + "|" + headerProperties.active + "|" + headerProperties.status + "|" + headerTwoLine;
+        PdfTemplate template = templateCache.get(templateKey);
+        if (template == null) {
+            // template origin is the upper left corner of the box, leave space for cross off shape
+            float padding = PDFGenerator.wedgeOffset + PDFGenerator.talentBoxStroke;
+            template = beginTemplate(talentBoxWidth + padding, talentBoxHeight + padding);
+            template.setBoundingBox(new Rectangle(-padding, -talentBoxHeight, talentBoxWidth, padding));
+            try {
+                drawTalentShapes(bgColor, 0, 0, talentBoxWidth, talentBoxHeight, customCost != 0, headerTwoLine, headerProperties.status);
+            } finally {
+                endTemplate();
+            }
+            templateCache.put(templateKey, template);
         }
-        // draw right footer shape
-        drawFooterShape(bgColor, x + talentBoxWidth - PDFGenerator.wedgeOffset - PDFGenerator.talentBoxStroke - 47, y - talentBoxHeight + PDFGenerator.talentBoxStroke, 47);
-        // draw header shape
-        drawHeaderShape(bgColor, x + PDFGenerator.talentBoxStroke*2.5f, y - PDFGenerator.talentBoxStroke*2.5f, talentBoxWidth - PDFGenerator.talentBoxStroke*5, headerTwoLine, headerProperties.status);
-        // draw cross off shape
-        drawCrossOff(bgColor, x + PDFGenerator.talentBoxStroke - PDFGenerator.wedgeOffset - PDFGenerator.talentBoxStroke, y);
-        canvas.restoreState();
+        canvas.addTemplate(template, x, y);
+        // same position as in drawTalentShapes
+        crossOffs[row * TalentTree.COLS + col] = new CrossOff(x - PDFGenerator.wedgeOffset, y, bgColor);
 
         // draw text
         canvas.beginText();
@@ -357,19 +365,102 @@ public class PageGeneratorSimple extends AbstractPageGenerator {
 
         // draw talent text
         canvas.setColorFill(BaseColor.BLACK);
-        float textSize = 10f;
-        boolean textAdded = false;
         float max = offSetYTalentText - y + talentBoxHeight - 2 * PDFGenerator.wedgeOffset;
 
-        while (!textAdded) { // adapt text size to box size
-            // create table
-            PdfPTable table = getTalentCell(key, talentBoxWidth, textSize);
-            // check table height against maximum height
-            if (table.getRowHeight(0) <= max || textSize <= 7.5f) { // small enough or textSize very small anyway?
-                table.writeSelectedRows(0, -1, x + PDFGenerator.talentBoxStroke*1.5f, offSetYTalentText, canvas);
-                textAdded = true;
-            } else textSize -= 0.5f; // otherwise make text smaller and try again
+        PdfPTable table = fitTalentCell(key, talentBoxWidth, max);
+        canvas.writeTable(table, x + PDFGenerator.talentBoxStroke*1.5f, offSetYTalentText);
+
+        if (event != null) event.finish(key, fittedSize, fittedLayouts);
+    }
+
+    /**
+     * get celled talent text with the largest font size fitting into the box
+     * @param key key for talent information
+     * @param talentBoxWidth width of talent box
+     * @param max maximum height of text
+     * @return PdfPTable
+     * @throws Exception
+     */
+    protected PdfPTable fitTalentCell(String key, float talentBoxWidth, float max) throws Exception {
+        FitCache fitCache = generator.getFitCache();
+        String cacheKey = fitCache.createKey(getLocalizedString(key), talentBoxWidth, max, getFontSetId());
+
+        // known size?
+        Float cachedSize = fitCache.get(cacheKey);
+        if (cachedSize != null) {
+            fittedSize = cachedSize;
+            fittedLayouts = 0;
+            return getTalentCell(key, talentBoxWidth, cachedSize);
+        }
+
+        // most texts fit with the largest size, so try this first
+        PdfPTable table = getTalentCell(key, talentBoxWidth, talentTextSizes[0]);
+        fitCache.countLayout();
+        int fitted = 0, layouts = 1;
+
+        if (table.getRowHeight(0) > max) {
+            // binary search for the first (largest) size fitting - the smallest size is used if nothing fits
+            int low = 1, high = talentTextSizes.length - 1;
+            PdfPTable fittedTable = null;
+            int fittedTableIndex = -1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                PdfPTable candidate = getTalentCell(key, talentBoxWidth, talentTextSizes[mid]);
+                fitCache.countLayout();
+                layouts++;
+                if (candidate.getRowHeight(0) <= max) {
+                    high = mid;
+                    fittedTable = candidate;
+                    fittedTableIndex = mid;
+                } else low = mid + 1;
+            }
+            fitted = low;
+            // reuse table if it has been created with the size found
+            if (fittedTableIndex != fitted) layouts++;
+            table = fittedTableIndex == fitted ? fittedTable : getTalentCell(key, talentBoxWidth, talentTextSizes[fitted]);
         }
+
+        fittedSize = talentTextSizes[fitted];
+        fittedLayouts = layouts;
+        if (metrics != null) metrics.fit(key, layouts);
+        fitCache.put(cacheKey, fittedSize);
+        return table;
+    }
+
+    /**
+     * get identity of fonts used in talent texts
+     * @return font set id
+     */
+    protected String getFontSetId() {
+        return FontRegistry.Face.CONDENSED_REGULAR.resource + "," + FontRegistry.Face.CONDENSED_BOLD.resource + "," + FontRegistry.Face.SYMBOL.resource;
+    }
+
+    /**
+     * Draw shapes of talent box
+     * @param color color of talent type
+     * @param x left position of box
+     * @param y top position of box
+     * @param talentBoxWidth width of box
+     * @param talentBoxHeight height of box
+     * @param hasCost draw cost footer shape?
+     * @param headerTwoLine two line header?
+     * @param status status of talent (ranked, normal)
+     */
+    protected void drawTalentShapes(BaseColor color, float x, float y, float talentBoxWidth, float talentBoxHeight, boolean hasCost, boolean headerTwoLine, char status) {
+        canvas.saveState();
+        // draw outer rectangle
+        drawTalentRectangle(color, x, y, talentBoxWidth, talentBoxHeight);
+        // draw left footer shape
+        if (hasCost) {
+            drawFooterShape(color, x + PDFGenerator.wedgeOffset + PDFGenerator.talentBoxStroke, y - talentBoxHeight + PDFGenerator.talentBoxStroke, 25);
+        }
+        // draw right footer shape
+        drawFooterShape(color, x + talentBoxWidth - PDFGenerator.wedgeOffset - PDFGenerator.talentBoxStroke - 47, y - talentBoxHeight + PDFGenerator.talentBoxStroke, 47);
+        // draw header shape
+        drawHeaderShape(color, x + PDFGenerator.talentBoxStroke*2.5f, y - PDFGenerator.talentBoxStroke*2.5f, talentBoxWidth - PDFGenerator.talentBoxStroke*5, headerTwoLine, status);
+        // draw cross off shape
+        drawCrossOff(color, x + PDFGenerator.talentBoxStroke - PDFGenerator.wedgeOffset - PDFGenerator.talentBoxStroke, y);
+        canvas.restoreState();
     }
 
     /**
@@ -512,6 +603,14 @@ public class PageGeneratorSimple extends AbstractPageGenerator {
         return spacing/2 + PDFGenerator.marginVertical + (5 - row) * (PDFGenerator.talentBoxHeight + spacing);
     }
 
+    /**
+     * @param cell talent box
+     * @return cross off shape of box drawn on last page generated, null if not drawn
+     */
+    public CrossOff getCrossOff(TalentCell cell) {
+        return crossOffs[cell.getRow() * TalentTree.COLS + cell.getCol()];
+    }
+
     /**
      * sort key
      */
@@ -536,9 +635,8 @@ public class PageGeneratorSimple extends AbstractPageGenerator {
         try {
             StringBuilder b = new StringBuilder();
             // prepend?
-            Object o = data.get("sortKeyPrepend");
-            if (o != null) b.append((String) o);
-            b.append(getMappedLocalizedString("header")).append("00").append(getMappedLocalizedString("subheader"));
+            if (tree.getSortKeyPrepend() != null) b.append(tree.getSortKeyPrepend());
+            b.append(getLocalizedString(tree.getHeader())).append("00").append(getLocalizedString(tree.getSubheader()));
             mySortKey = b.toString();
         } catch (Exception e) {
             try {
@@ -551,6 +649,39 @@ public class PageGeneratorSimple extends AbstractPageGenerator {
 
     @Override
     public int compareTo(AbstractPageGenerator abstractPageGenerator) {
-        return getLocalizedSortKey().compareTo(abstractPageGenerator.getLocalizedSortKey());
+        return getCollationKey().compareTo(abstractPageGenerator.getCollationKey());
+    }
+
+    /**
+     * Position and color of a cross off shape on the page - immutable
+     */
+    public static final class CrossOff {
+        /**
+         * left corner of diamond
+         */
+        public final float x;
+        public final float y;
+        public final BaseColor color;
+
+        public CrossOff(float x, float y, BaseColor color) {
+            this.x = x;
+            this.y = y;
+            this.color = color;
+        }
+
+        /**
+         * draw filled cross off shape, marking talent as learned
+         * @param canvas canvas of page
+         */
+        public void fill(PdfContentByte canvas) {
+            canvas.setColorFill(color);
+            canvas.setColorStroke(color);
+            canvas.setLineWidth(PDFGenerator.talentBoxStroke);
+            canvas.moveTo(x, y);
+            canvas.lineTo(x + PDFGenerator.wedgeOffset, y + PDFGenerator.wedgeOffset);
+            canvas.lineTo(x + 2*PDFGenerator.wedgeOffset, y);
+            canvas.lineTo(x + PDFGenerator.wedgeOffset, y - PDFGenerator.wedgeOffset);
+            canvas.closePathFillStroke();
+        }
     }
 }
@@ -0,0 +1,211 @@
+package de.beimax.talenttree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Immutable settings and loaded data shared by renders: strings, trees, page size and output profile. Fonts are
+ * shared through the process wide FontRegistry, fitted font sizes and rendered pages through the thread safe FitCache
+ * and PageCache. Build once using
+ * the Builder (or from an initialized generator) and pass to a Renderer. Thread safe.
+ */
+public final class RenderContext {
+    private final StringCatalog catalog;
+    private final List<TalentTree> trees;
+    private final String pageSize;
+    private final String optimize;
+    private final int precision;
+    private final FitCache fitCache;
+    private final PageCache pageCache;
+
+    private RenderContext(StringCatalog catalog, List<TalentTree> trees, String pageSize, String optimize, int precision,
+                          FitCache fitCache, PageCache pageCache) {
+        this.catalog = catalog;
+        this.trees = Collections.unmodifiableList(new ArrayList<>(trees));
+        this.pageSize = pageSize;
+        this.optimize = optimize;
+        this.precision = precision;
+        this.fitCache = fitCache;
+        this.pageCache = pageCache;
+    }
+
+    /**
+     * Create context sharing strings, trees and settings of a generator
+     * @param generator initialized generator
+     * @return context
+     */
+    public static RenderContext of(PDFGenerator generator) {
+        return new RenderContext(generator.getCatalog(), generator.getTrees(), generator.getPageSize(),
+                generator.getOptimize(), generator.getPrecision(), generator.getFitCache(), generator.getPageCache());
+    }
+
+    /**
+     * @return strings and texts compiled from them - strings are unmodifiable
+     */
+    public StringCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @return all trees in order of data file, unmodifiable
+     */
+    public List<TalentTree> getTrees() {
+        return trees;
+    }
+
+    public String getPageSize() {
+        return pageSize;
+    }
+
+    public String getOptimize() {
+        return optimize;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public FitCache getFitCache() {
+        return fitCache;
+    }
+
+    /**
+     * @return page cache or null
+     */
+    public PageCache getPageCache() {
+        return pageCache;
+    }
+
+    /**
+     * create generator holding the state of a single render
+     * @param trees trees to render
+     * @return initialized generator
+     * @throws Exception
+     */
+    PDFGenerator createJob(List<TalentTree> trees) throws Exception {
+        PDFGenerator job = new PDFGenerator();
+        job.setTrees(trees);
+        job.setCatalog(catalog);
+        job.setFitCache(fitCache);
+        job.setPageCache(pageCache);
+        job.setPageSize(pageSize);
+        job.setOptimize(optimize);
+        job.setPrecision(precision);
+        job.setVerbose(false);
+        job.initialize();
+        return job;
+    }
+
+    /**
+     * Loads strings and data - settings not given are taken from the defaults of the command line
+     */
+    public static final class Builder {
+        private final PDFGenerator generator;
+
+        public Builder() throws Exception {
+            generator = new PDFGenerator();
+            generator.setVerbose(false);
+        }
+
+        /**
+         * @param dataFile data file, null for bundled data
+         * @return builder
+         */
+        public Builder dataFile(String dataFile) {
+            generator.setDataFile(dataFile);
+            return this;
+        }
+
+        /**
+         * @param stringsFile translation file, overrides language
+         * @return builder
+         */
+        public Builder stringsFile(String stringsFile) {
+            generator.setStringsFile(stringsFile);
+            return this;
+        }
+
+        /**
+         * @param language language of bundled translation
+         * @return builder
+         */
+        public Builder language(String language) {
+            generator.setLanguage(language);
+            return this;
+        }
+
+        /**
+         * @param pageSize A4 or letter
+         * @return builder
+         */
+        public Builder pageSize(String pageSize) {
+            generator.setPageSize(pageSize);
+            return this;
+        }
+
+        /**
+         * @param optimize size, speed or null
+         * @return builder
+         */
+        public Builder optimize(String optimize) {
+            generator.setOptimize(optimize);
+            return this;
+        }
+
+        /**
+         * @param precision decimal places of coordinates
+         * @return builder
+         */
+        public Builder precision(int precision) {
+            generator.setPrecision(precision);
+            return this;
+        }
+
+        /**
+         * @param fitCache fitted font sizes to share with other contexts
+         * @return builder
+         */
+        public Builder fitCache(FitCache fitCache) {
+            generator.setFitCache(fitCache);
+            return this;
+        }
+
+        /**
+         * @param pageCache rendered pages to share with other contexts, null for none
+         * @return builder
+         */
+        public Builder pageCache(PageCache pageCache) {
+            generator.setPageCache(pageCache);
+            return this;
+        }
+
+        /**
+         * load strings and data
+         * @return context
+         * @throws Exception
+         */
+        public RenderContext build() throws Exception {
+            generator.initialize();
+            return RenderContext.of(generator);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package de.beimax.talenttree;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Metrics of a run: time and allocations of each phase, and for each page the time spent per section, the bytes
+ * allocated, the bytes added to the output and the number of text layouts needed to fit its talent texts. Pages are
+ * recorded by the threads rendering them, so the report is thread safe. Allocations are taken from the JVM's thread MX
+ * bean and are -1, if the JVM does not support measuring them.
+ */
+public class RenderReport {
+    /**
+     * number of entries listed in summary
+     */
+    private static final int TOP = 5;
+
+    /**
+     * thread MX bean supporting allocation measurement, null if not supported
+     */
+    private static final com.sun.management.ThreadMXBean threadBean;
+    static {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean = null;
+        try {
+            if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+                allocationBean = (com.sun.management.ThreadMXBean) bean;
+                allocationBean.setThreadAllocatedMemoryEnabled(true);
+            }
+        } catch (Throwable e) {
+            allocationBean = null; // other JVMs
+        }
+        threadBean = allocationBean;
+    }
+
+    /**
+     * phases in order of recording
+     */
+    private final List<Phase> phases = Collections.synchronizedList(new ArrayList<Phase>());
+
+    /**
+     * rendered pages
+     */
+    private final Queue<PageMetrics> pages = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @return bytes allocated by current thread so far or -1, if not supported
+     */
+    public static long allocatedBytes() {
+        if (threadBean == null) return -1;
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * start measuring a phase on current thread
+     * @return stop watch to pass to endPhase
+     */
+    public Stopwatch startPhase() {
+        return new Stopwatch();
+    }
+
+    /**
+     * end measuring a phase
+     * @param name name of phase
+     * @param stopwatch stop watch returned by startPhase
+     */
+    public void endPhase(String name, Stopwatch stopwatch) {
+        phases.add(new Phase(name, stopwatch.elapsedNanos(), stopwatch.allocatedBytes()));
+    }
+
+    /**
+     * add phase measured elsewhere
+     * @param name name of phase
+     * @param nanos time spent
+     */
+    public void addPhase(String name, long nanos) {
+        phases.add(new Phase(name, nanos, -1));
+    }
+
+    /**
+     * start measuring a page on current thread
+     * @param id tree id
+     * @param type generator type
+     * @return page metrics to fill while rendering
+     */
+    public PageMetrics startPage(String id, String type) {
+        PageMetrics page = new PageMetrics(id, type);
+        pages.add(page);
+        return page;
+    }
+
+    /**
+     * write JSON report
+     * @param file report file
+     * @throws Exception
+     */
+    public void save(File file) throws Exception {
+        try (Writer out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file)), "utf-8")) {
+            out.write(toJson());
+        } catch (IOException e) {
+            throw new Exception("Error writing report " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return report as JSON
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\n  \"phases\": [");
+        synchronized (phases) {
+            for (int i = 0; i < phases.size(); i++) {
+                Phase phase = phases.get(i);
+                sb.append(i == 0 ? "\n" : ",\n").append("    {\"name\": ").append(quote(phase.name))
+                        .append(", \"ms\": ").append(millis(phase.nanos))
+                        .append(", \"allocatedBytes\": ").append(phase.allocatedBytes).append('}');
+            }
+        }
+        sb.append("\n  ],\n  \"pages\": [");
+        boolean first = true;
+        for (PageMetrics page : pages) {
+            sb.append(first ? "\n" : ",\n").append("    {\"id\": ").append(quote(page.id))
+                    .append(", \"type\": ").append(quote(page.type))
+                    .append(", \"ms\": ").append(millis(page.nanos))
+                    .append(", \"allocatedBytes\": ").append(page.allocatedBytes)
+                    .append(", \"outputBytes\": ").append(page.outputBytes)
+                    .append(", \"sections\": {");
+            boolean firstSection = true;
+            for (Map.Entry<String, Long> section : page.sections.entrySet()) {
+                if (!firstSection) sb.append(", ");
+                sb.append(quote(section.getKey())).append(": ").append(millis(section.getValue()));
+                firstSection = false;
+            }
+            sb.append("}, \"fitLayouts\": {");
+            boolean firstFit = true;
+            for (Map.Entry<String, Integer> fit : page.fits.entrySet()) {
+                if (!firstFit) sb.append(", ");
+                sb.append(quote(fit.getKey())).append(": ").append(fit.getValue());
+                firstFit = false;
+            }
+            sb.append("}}");
+            first = false;
+        }
+        sb.append("\n  ]\n}\n");
+        return sb.toString();
+    }
+
+    /**
+     * @return human readable summary: phases, slowest pages and talents needing the most layouts to fit
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder("Report:\n");
+        synchronized (phases) {
+            for (Phase phase : phases) {
+                sb.append("  ").append(phase.name).append(": ").append(millis(phase.nanos)).append(" ms");
+                if (phase.allocatedBytes >= 0) sb.append(", ").append(phase.allocatedBytes / 1024).append(" KB allocated");
+                sb.append('\n');
+            }
+        }
+
+        List<PageMetrics> slowest = new ArrayList<>(pages);
+        Collections.sort(slowest, new Comparator<PageMetrics>() {
+            @Override
+            public int compare(PageMetrics o1, PageMetrics o2) {
+                return Long.compare(o2.nanos, o1.nanos);
+            }
+        });
+        sb.append("Slowest pages:\n");
+        for (PageMetrics page : slowest.subList(0, Math.min(TOP, slowest.size()))) {
+            sb.append("  ").append(page.id).append(": ").append(millis(page.nanos)).append(" ms (");
+            boolean first = true;
+            for (Map.Entry<String, Long> section : page.sections.entrySet()) {
+                if (!first) sb.append(", ");
+                sb.append(section.getKey()).append(' ').append(millis(section.getValue()));
+                first = false;
+            }
+            sb.append("), ").append(page.outputBytes / 1024).append(" KB output\n");
+        }
+
+        List<String[]> fits = new ArrayList<>();
+        for (PageMetrics page : pages)
+            for (Map.Entry<String, Integer> fit : page.fits.entrySet())
+                fits.add(new String[]{fit.getKey(), page.id, String.valueOf(fit.getValue())});
+        Collections.sort(fits, new Comparator<String[]>() {
+            @Override
+            public int compare(String[] o1, String[] o2) {
+                return Integer.compare(Integer.parseInt(o2[2]), Integer.parseInt(o1[2]));
+            }
+        });
+        sb.append("Talents needing most layouts to fit:");
+        if (fits.isEmpty()) sb.append(" none (all sizes cached)");
+        for (String[] fit : fits.subList(0, Math.min(TOP, fits.size())))
+            sb.append("\n  ").append(fit[0]).append(" in ").append(fit[1]).append(": ").append(fit[2]);
+        return sb.toString();
+    }
+
+    /**
+     * format nanoseconds as milliseconds
+     */
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.2f", nanos / 1000000.0);
+    }
+
+    /**
+     * quote JSON string
+     */
+    static String quote(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Time and allocations since creation, on the creating thread
+     */
+    public static class Stopwatch {
+        private final long startNanos = System.nanoTime();
+        private final long startBytes = RenderReport.allocatedBytes();
+
+        public long elapsedNanos() {
+            return System.nanoTime() - startNanos;
+        }
+
+        /**
+         * @return bytes allocated since creation or -1, if not supported
+         */
+        public long allocatedBytes() {
+            if (startBytes < 0) return -1;
+            return RenderReport.allocatedBytes() - startBytes;
+        }
+    }
+
+    /**
+     * Measured phase
+     */
+    private static class Phase {
+        private final String name;
+        private final long nanos;
+        private final long allocatedBytes;
+
+        Phase(String name, long nanos, long allocatedBytes) {
+            this.name = name;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    /**
+     * Metrics of a single page, filled by the thread rendering it
+     */
+    public static class PageMetrics {
+        private final String id;
+        private final String type;
+        private final Stopwatch stopwatch = new Stopwatch();
+        private final Map<String, Long> sections = new LinkedHashMap<>();
+        private final Map<String, Integer> fits = new LinkedHashMap<>();
+        private long sectionStart = System.nanoTime();
+        private volatile long nanos;
+        private volatile long allocatedBytes;
+        private volatile long outputBytes = -1;
+
+        PageMetrics(String id, String type) {
+            this.id = id;
+            this.type = type;
+        }
+
+        /**
+         * end section - it started when the previous one ended
+         * @param name name of section
+         */
+        public void endSection(String name) {
+            long now = System.nanoTime();
+            Long before = sections.get(name);
+            sections.put(name, (before == null ? 0 : before) + now - sectionStart);
+            sectionStart = now;
+        }
+
+        /**
+         * record text layouts needed to fit a talent text
+         * @param key talent key
+         * @param layouts number of layouts
+         */
+        public void fit(String key, int layouts) {
+            Integer before = fits.get(key);
+            fits.put(key, (before == null ? 0 : before) + layouts);
+        }
+
+        /**
+         * end page
+         * @param outputBytes bytes added to output
+         */
+        public void end(long outputBytes) {
+            nanos = stopwatch.elapsedNanos();
+            allocatedBytes = stopwatch.allocatedBytes();
+            this.outputBytes = outputBytes;
+        }
+    }
+}
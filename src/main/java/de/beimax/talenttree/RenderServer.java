@@ -0,0 +1,342 @@
+package de.beimax.talenttree;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Local HTTP render service: data, fonts, strings files and fit cache stay loaded between requests, PDFs are streamed
+ * straight to the response.
+ *
+ * GET /render?lang=de&pageSize=letter&trees=Explorer*,ForcePowerSense renders a book, parameters are optional
+ * GET /stats returns request counts and a latency histogram as JSON
+ *
+ * Requests are rendered on a bounded worker pool. If all workers and queue slots are busy, requests are rejected with
+ * 503. Requests running longer than the timeout are answered with 504 - or cut off, if streaming has begun already.
+ */
+public class RenderServer {
+    /**
+     * generator holding command line settings
+     */
+    private final PDFGenerator settings;
+
+    /**
+     * creates generators sharing data and caches
+     */
+    private JobFactory factory;
+
+    private HttpServer server;
+
+    /**
+     * workers rendering PDFs
+     */
+    private ThreadPoolExecutor workers;
+
+    /**
+     * threads handling connections - these wait for workers
+     */
+    private ExecutorService handlers;
+
+    /**
+     * saves fit cache when the JVM exits while running
+     */
+    private Thread shutdownHook;
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param settings generator holding command line settings
+     */
+    public RenderServer(PDFGenerator settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * warm up caches and start listening
+     * @throws Exception
+     */
+    public void start() throws Exception {
+        long start = System.nanoTime();
+
+        // warm caches: data, fonts, default strings file
+        factory = new JobFactory(settings);
+        for (FontRegistry.Face face : FontRegistry.Face.values()) FontRegistry.getInstance().getFont(face);
+        factory.createJob(new LinkedHashMap<String, Object>(), 1);
+
+        int workerCount = settings.getThreads() > 1 ? settings.getThreads() : Runtime.getRuntime().availableProcessors();
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(settings.getQueueSize()), new ThreadPoolExecutor.AbortPolicy());
+        handlers = Executors.newFixedThreadPool(workerCount + settings.getQueueSize() + 2);
+
+        server = HttpServer.create(new InetSocketAddress(settings.getHost(), settings.getServePort()), 0);
+        server.createContext("/render", new RenderHandler());
+        server.createContext("/stats", new StatsHandler());
+        server.setExecutor(handlers);
+        server.start();
+
+        // keep fitted font sizes when stopped
+        shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                RenderServer.this.stop();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        settings.getConsole().println("Listening on http://" + settings.getHost() + ":" + server.getAddress().getPort() + "/render with "
+                + workerCount + " workers (ready in " + (System.nanoTime() - start) / 1000000 + " ms)");
+    }
+
+    /**
+     * stop server and save fit cache
+     */
+    public synchronized void stop() {
+        if (server == null) return;
+        if (Thread.currentThread() != shutdownHook) Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        server.stop(0);
+        handlers.shutdownNow();
+        workers.shutdownNow();
+        server = null;
+        try {
+            factory.saveFitCache();
+        } catch (Exception e) {
+            System.err.println("Error occured: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return port listened to (useful if port 0 was requested)
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return worker pool rendering PDFs (used by tests to occupy workers)
+     */
+    ThreadPoolExecutor getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return factory creating render jobs (used by tests to check shared catalogs)
+     */
+    JobFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * parse query string of request
+     * @param query raw query, may be null
+     * @return parameters, repeated parameters are joined by commas
+     * @throws Exception
+     */
+    protected Map<String, Object> parseQuery(String query) throws Exception {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        if (query == null || query.isEmpty()) return parameters;
+
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) continue;
+            int pos = pair.indexOf('=');
+            String key = URLDecoder.decode(pos < 0 ? pair : pair.substring(0, pos), "UTF-8");
+            String value = pos < 0 ? "" : URLDecoder.decode(pair.substring(pos + 1), "UTF-8");
+            // strings files and outputs refer to local files and may not be set by clients
+            if (!key.equals("lang") && !key.equals("pageSize") && !key.equals("trees"))
+                throw new Exception("Unknown parameter " + key + ".");
+
+            Object old = parameters.get(key);
+            parameters.put(key, old == null ? value : old + "," + value);
+        }
+        return parameters;
+    }
+
+    /**
+     * send short plain text or JSON response
+     * @param exchange exchange
+     * @param status HTTP status
+     * @param contentType content type
+     * @param body body
+     * @throws IOException
+     */
+    protected static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * renders PDFs
+     */
+    protected class RenderHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long start = System.nanoTime();
+            requests.incrementAndGet();
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    send(exchange, 405, "text/plain", "Only GET is supported.\n");
+                    return;
+                }
+
+                // create job
+                final PDFGenerator job;
+                try {
+                    job = factory.createJob(parseQuery(exchange.getRequestURI().getRawQuery()), 1);
+                } catch (Exception e) {
+                    send(exchange, 400, "text/plain", e.getMessage() + "\n");
+                    return;
+                }
+                final ResponseStream response = new ResponseStream(exchange, new File(job.getFileName()).getName());
+                final OutputStream out = new BufferedOutputStream(response, 65536);
+                job.setOutputStream(out);
+                job.setVerbose(false);
+
+                // render on worker pool
+                Future<?> future;
+                try {
+                    future = workers.submit(new Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            job.generate();
+                            out.flush();
+                            return null;
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    rejected.incrementAndGet();
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    send(exchange, 503, "text/plain", "Server busy, try again later.\n");
+                    return;
+                }
+
+                try {
+                    future.get(settings.getTimeout(), TimeUnit.SECONDS);
+                    response.commit();
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    timeouts.incrementAndGet();
+                    response.abort(504, "Rendering timed out.\n");
+                } catch (ExecutionException e) {
+                    errors.incrementAndGet();
+                    response.abort(500, "Error occured: " + e.getCause().getMessage() + "\n");
+                } catch (InterruptedException e) {
+                    future.cancel(true);
+                    response.abort(503, "Server is stopping.\n");
+                }
+                histogram.record(System.nanoTime() - start);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * returns statistics
+     */
+    protected class StatsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                String json = "{\"requests\":" + requests.get() + ",\"rejected\":" + rejected.get()
+                        + ",\"timeouts\":" + timeouts.get() + ",\"errors\":" + errors.get()
+                        + ",\"workers\":" + workers.getMaximumPoolSize() + ",\"active\":" + workers.getActiveCount()
+                        + ",\"queued\":" + workers.getQueue().size()
+                        + ",\"latency\":" + histogram.toJson() + "}\n";
+                send(exchange, 200, "application/json", json);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * Response body sending headers on first write. Once aborted, writes fail, so workers stop rendering.
+     */
+    protected static class ResponseStream extends OutputStream {
+        private final HttpExchange exchange;
+        private final String fileName;
+        private boolean committed = false;
+        private boolean aborted = false;
+
+        public ResponseStream(HttpExchange exchange, String fileName) {
+            this.exchange = exchange;
+            this.fileName = fileName;
+        }
+
+        /**
+         * send headers, if not done yet
+         * @throws IOException
+         */
+        public synchronized void commit() throws IOException {
+            if (aborted) throw new IOException("Response has been aborted.");
+            if (committed) return;
+            exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+            exchange.getResponseHeaders().set("Content-Disposition", "inline; filename=\"" + fileName + "\"");
+            exchange.sendResponseHeaders(200, 0); // chunked
+            committed = true;
+        }
+
+        /**
+         * abort response: send error if nothing has been streamed yet, otherwise the response is cut off
+         * @param status HTTP status
+         * @param message error message
+         * @throws IOException
+         */
+        public synchronized void abort(int status, String message) throws IOException {
+            if (aborted) return;
+            aborted = true;
+            if (!committed) send(exchange, status, "text/plain", message);
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            commit();
+            exchange.getResponseBody().write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            commit();
+            exchange.getResponseBody().write(b, off, len);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (committed && !aborted) exchange.getResponseBody().flush();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package de.beimax.talenttree;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Library entry point: renders PDFs from a shared RenderContext. Each call keeps its own document, writer, page
+ * generators and template cache, so a single renderer may be called from any number of threads at the same time.
+ * Output written by concurrent calls is the same as written by sequential ones, apart from the values iText creates
+ * per document (creation date, document id and tags of font subsets).
+ *
+ * RenderContext context = new RenderContext.Builder().language("de").pageSize("letter").build();
+ * Renderer renderer = new Renderer(context);
+ * renderer.render(TreeFilter.parse("Explorer*"), out);
+ *
+ * Thread safe.
+ */
+public class Renderer {
+    /**
+     * shared context
+     */
+    private final RenderContext context;
+
+    /**
+     * Constructor
+     * @param context shared context
+     */
+    public Renderer(RenderContext context) {
+        this.context = context;
+    }
+
+    public RenderContext getContext() {
+        return context;
+    }
+
+    /**
+     * render all trees
+     * @param out stream to write PDF to - not closed
+     * @throws Exception
+     */
+    public void render(OutputStream out) throws Exception {
+        render(context.getTrees(), out);
+    }
+
+    /**
+     * render selected trees
+     * @param filter selection, null for all trees
+     * @param out stream to write PDF to - not closed
+     * @throws Exception
+     */
+    public void render(TreeFilter filter, OutputStream out) throws Exception {
+        if (filter == null) {
+            render(out);
+            return;
+        }
+        List<TalentTree> selected = new ArrayList<>();
+        for (TalentTree tree : context.getTrees())
+            if (filter.matches(tree.getId())) selected.add(tree);
+        render(selected, out);
+    }
+
+    /**
+     * render selected trees into memory
+     * @param filter selection, null for all trees
+     * @return read only direct buffer holding the PDF
+     * @throws Exception
+     */
+    public ByteBuffer render(TreeFilter filter) throws Exception {
+        ByteBufferOutputStream out = new ByteBufferOutputStream(256 * 1024);
+        render(filter, out);
+        return out.toByteBuffer();
+    }
+
+    /**
+     * render trees - pages are sorted as in the full book
+     * @param trees trees to render
+     * @param out stream to write PDF to - not closed
+     * @throws Exception
+     */
+    public void render(List<TalentTree> trees, OutputStream out) throws Exception {
+        PDFGenerator job = context.createJob(trees);
+        job.setOutputStream(out);
+        job.generate();
+    }
+}
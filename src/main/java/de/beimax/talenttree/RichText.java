@@ -0,0 +1,164 @@
+package de.beimax.talenttree;
+
+import com.itextpdf.text.Chunk;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Phrase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Compiled rich text of a localized string: parts are separated by |, parts starting with * are printed bold,
+ * parts starting with # are printed in the symbol font. Immutable.
+ */
+public final class RichText {
+    /**
+     * Styles of runs
+     */
+    public static final byte REGULAR = 0;
+    public static final byte BOLD = 1;
+    public static final byte SYMBOL = 2;
+
+    /**
+     * texts of runs
+     */
+    private final String[] texts;
+
+    /**
+     * styles of runs
+     */
+    private final byte[] styles;
+
+    /**
+     * bit mask of styles used
+     */
+    private final int styleMask;
+
+    private RichText(String[] texts, byte[] styles) {
+        this.texts = texts;
+        this.styles = styles;
+        int mask = 0;
+        for (byte style : styles) mask |= 1 << style;
+        this.styleMask = mask;
+    }
+
+    /**
+     * Compile localized string to run list
+     * @param localized localized string
+     * @return compiled text
+     */
+    public static RichText compile(String localized) {
+        List<String> texts = new ArrayList<>();
+        List<Byte> styles = new ArrayList<>();
+
+        for (String part : localized.split("\\|")) {
+            if (part.length() == 0) continue; // make sure to not fire index out of range
+            char first = part.charAt(0);
+            char last = part.charAt(part.length()-1);
+            byte style;
+            switch (first) {
+                case '*': // bold
+                    style = BOLD;
+                    break;
+                case '#': // symbol font
+                    style = SYMBOL;
+                    break;
+                default: // all other cases
+                    texts.add(part);
+                    styles.add(REGULAR);
+                    continue;
+            }
+            part = part.substring(1); // remove first char
+            if (last == ' ') part = part.substring(0, part.length() - 1);
+            texts.add(part);
+            styles.add(style);
+            if (last == ' ') {
+                texts.add(" ");
+                styles.add(REGULAR);
+            }
+        }
+
+        byte[] styleArray = new byte[styles.size()];
+        for (int i = 0; i < styleArray.length; i++) styleArray[i] = styles.get(i);
+        return new RichText(texts.toArray(new String[texts.size()]), styleArray);
+    }
+
+    /**
+     * Create phrase from run list - fonts of styles not used may be null
+     * @param fontSize size of font (leading is calculated from this)
+     * @param fontRegular regular font
+     * @param fontBold bold font
+     * @param fontSymbol symbol font
+     * @return phrase
+     */
+    public Phrase toPhrase(float fontSize, Font fontRegular, Font fontBold, Font fontSymbol) {
+        Phrase phrase = new Phrase();
+        phrase.setLeading(fontSize * 1.2f);
+
+        for (int i = 0; i < texts.length; i++) {
+            Font font;
+            switch (styles[i]) {
+                case BOLD:
+                    font = fontBold;
+                    break;
+                case SYMBOL:
+                    font = fontSymbol;
+                    break;
+                default:
+                    font = fontRegular;
+            }
+            phrase.add(new Chunk(texts[i], font));
+        }
+
+        return phrase;
+    }
+
+    /**
+     * @param style style to check
+     * @return true if any run uses this style
+     */
+    public boolean hasStyle(byte style) {
+        return (styleMask & (1 << style)) != 0;
+    }
+
+    /**
+     * @return number of runs
+     */
+    public int size() {
+        return texts.length;
+    }
+
+    /**
+     * @param index index of run
+     * @return text of run
+     */
+    public String getText(int index) {
+        return texts[index];
+    }
+
+    /**
+     * @param index index of run
+     * @return style of run
+     */
+    public byte getStyle(int index) {
+        return styles[index];
+    }
+}
@@ -0,0 +1,348 @@
+package de.beimax.talenttree;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfWriter;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * Character sheets: write one PDF per character of a roster, showing the trees of the character with the talents
+ * learned crossed off. Each tree is rendered once only, recording the positions of its cross off shapes. Sheets import
+ * these base pages and stamp the filled shapes of the talents learned on top, so a sheet costs little more than
+ * copying its pages. Sheets are written concurrently.
+ *
+ * The roster is a YAML file, one document per character:
+ *
+ * ---
+ * name: Kira                                        # name of character, used in file name
+ * trees: [ExplorerFringer, ExplorerScout]           # ids or globs of trees to print
+ * talents: [ExplorerFringer:GalaxyMapper, ExplorerScout:1.2]  # optional, talents learned (TreeId:Key or TreeId:row.column)
+ *
+ * File names are created from the split pattern, {name} being the name of the character.
+ */
+public class SheetGenerator {
+    /**
+     * generator holding command line settings
+     */
+    private final PDFGenerator settings;
+
+    /**
+     * context shared by base pages
+     */
+    private RenderContext context;
+
+    /**
+     * rendered trees per id, complete before sheets are written
+     */
+    private final Map<String, BasePage> basePages = new LinkedHashMap<>();
+
+    /**
+     * readers of base pages per worker - a reader must not be imported by writers running concurrently
+     */
+    private final ThreadLocal<Map<String, PdfReader>> readers = new ThreadLocal<Map<String, PdfReader>>() {
+        @Override
+        protected Map<String, PdfReader> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    /**
+     * Constructor
+     * @param settings generator holding command line settings
+     */
+    public SheetGenerator(PDFGenerator settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * render base pages, then write all sheets
+     * @throws Exception
+     */
+    public void generate() throws Exception {
+        long start = System.nanoTime();
+
+        // load strings and data once - all sheets share them
+        settings.initialize();
+        context = RenderContext.of(settings);
+        String pattern = settings.getSplitPattern() != null ? settings.getSplitPattern() : SplitGenerator.DEFAULT_PATTERN;
+        if (!pattern.contains("{name}")) throw new Exception("Sheet file name pattern must contain {name}.");
+        String baseName = settings.getFileName();
+        baseName = baseName.substring(0, baseName.length() - 4);
+
+        // sheets and the trees they need, in sort order
+        List<TalentTree> sorted = settings.getSortedTrees();
+        final List<Sheet> sheets = new ArrayList<>();
+        Set<String> fileNames = new HashSet<>();
+        for (Map<String, Object> definition : loadRoster()) {
+            Sheet sheet = createSheet(definition, sorted);
+            sheet.fileName = pattern.replace("{FileName}", baseName).replace("{name}", SplitGenerator.sanitize(sheet.name))
+                    .replace("{pageSize}", settings.getPageSize());
+            if (!fileNames.add(sheet.fileName))
+                throw new Exception("Output file " + sheet.fileName + " is created for more than one character.");
+            for (TalentTree tree : sheet.trees)
+                if (!basePages.containsKey(tree.getId())) basePages.put(tree.getId(), new BasePage(tree));
+            sheets.add(sheet);
+        }
+
+        int parallelism = settings.getThreads() > 1 ? settings.getThreads() : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long baseTime;
+        try {
+            // render each tree once, then stamp sheets
+            final List<BasePage> pages = new ArrayList<>(basePages.values());
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(pages);
+                }
+            });
+            baseTime = System.nanoTime() - start;
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(sheets);
+                }
+            });
+        } catch (RuntimeException e) {
+            // unwrap exceptions thrown by tasks - joining rethrows copies of them, wrapping the original
+            Throwable cause = e;
+            while (cause instanceof RuntimeException && cause.getCause() != null) cause = cause.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        PrintStream console = settings.getConsole();
+        for (Sheet sheet : sheets)
+            console.println("Created " + sheet.fileName + " (" + sheet.trees.size() + " pages, " + (sheet.size + 1023) / 1024 + " KB)");
+
+        // keep fitted font sizes for next run
+        if (settings.getFitCacheFile() != null) settings.getFitCache().save(new File(settings.getFitCacheFile()));
+
+        console.println("Roster: " + sheets.size() + " sheets of " + basePages.size() + " trees done in "
+                + (System.nanoTime() - start) / 1000000 + " ms (trees rendered in " + baseTime / 1000000 + " ms)");
+    }
+
+    /**
+     * load character definitions from roster
+     * @return list of character definitions
+     * @throws Exception
+     */
+    protected List<Map<String, Object>> loadRoster() throws Exception {
+        File file = new File(settings.getRosterFile());
+        if (!file.exists()) throw new Exception("Roster " + file + " not found.");
+
+        List<Map<String, Object>> definitions = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            for (Object o : new Yaml().loadAll(in)) {
+                if (o == null) continue; // empty document
+                if (!(o instanceof Map)) throw new Exception("Character definition is not a map: " + o);
+                Map<String, Object> definition = new LinkedHashMap<>();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) o).entrySet()) {
+                    if (!(entry.getKey() instanceof String))
+                        throw new Exception("Key " + entry.getKey() + " of character definition is not a string: " + o);
+                    definition.put((String) entry.getKey(), entry.getValue());
+                }
+                definitions.add(definition);
+            }
+        } catch (Exception e) {
+            throw new Exception("Error loading roster: " + e.getMessage());
+        }
+        if (definitions.isEmpty()) throw new Exception("Roster " + file + " contains no characters.");
+
+        return definitions;
+    }
+
+    /**
+     * create sheet from character definition
+     * @param definition character definition
+     * @param sorted all trees in sort order
+     * @return sheet without file name
+     * @throws Exception
+     */
+    protected Sheet createSheet(Map<String, Object> definition, List<TalentTree> sorted) throws Exception {
+        Object name = definition.get("name");
+        if (!(name instanceof String)) throw new Exception("Character definition without name: " + definition);
+        try {
+            TreeFilter filter = new TreeFilter(toStrings(definition.get("trees"), "trees"));
+            List<TalentTree> trees = new ArrayList<>();
+            for (TalentTree tree : sorted)
+                if (filter.matches(tree.getId())) trees.add(tree);
+            if (trees.isEmpty()) throw new Exception("No talent trees selected.");
+
+            StringBuilder talents = new StringBuilder();
+            if (definition.get("talents") != null)
+                for (String talent : toStrings(definition.get("talents"), "talents")) talents.append(talent).append(',');
+            int[] learned = TalentPlanner.parseOwned(trees, talents.toString());
+            for (int t = 0; t < trees.size(); t++)
+                if (!trees.get(t).getGraph().isValid(learned[t]))
+                    throw new Exception("Talents learned in " + trees.get(t).getId() + " are not connected to the first row.");
+
+            return new Sheet((String) name, trees, learned);
+        } catch (Exception e) {
+            throw new Exception("Error in roster entry of " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * convert parsed list to strings
+     */
+    private static List<String> toStrings(Object o, String name) throws Exception {
+        if (!(o instanceof List)) throw new Exception("Key " + name + " must be a list.");
+        List<String> strings = new ArrayList<>();
+        for (Object s : (List<?>) o) strings.add(String.valueOf(s));
+        return strings;
+    }
+
+    /**
+     * @param page base page
+     * @return reader of base page for current worker
+     * @throws Exception
+     */
+    protected PdfReader getReader(BasePage page) throws Exception {
+        Map<String, PdfReader> workerReaders = readers.get();
+        PdfReader reader = workerReaders.get(page.tree.getId());
+        if (reader == null) {
+            reader = new PdfReader(page.pdf);
+            workerReaders.put(page.tree.getId(), reader);
+        }
+        return reader;
+    }
+
+    /**
+     * single tree rendered once, with positions of its cross off shapes
+     */
+    protected class BasePage extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        protected final TalentTree tree;
+        protected byte[] pdf;
+
+        /**
+         * cross off shapes per box, null if not drawn
+         */
+        protected PageGeneratorSimple.CrossOff[] crossOffs;
+
+        public BasePage(TalentTree tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                PDFGenerator job = context.createJob(Collections.singletonList(tree));
+                AbstractPageGenerator pageGenerator = job.createPageGenerator(tree);
+                pdf = job.renderSinglePage(pageGenerator);
+                crossOffs = new PageGeneratorSimple.CrossOff[tree.getCellCount()];
+                if (pageGenerator instanceof PageGeneratorSimple)
+                    for (int i = 0; i < crossOffs.length; i++)
+                        crossOffs[i] = ((PageGeneratorSimple) pageGenerator).getCrossOff(tree.getCell(i));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * sheet of single character, written as fork/join task
+     */
+    protected class Sheet extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        protected final String name;
+        protected final List<TalentTree> trees;
+
+        /**
+         * mask of boxes learned per tree
+         */
+        protected final int[] learned;
+        protected String fileName;
+
+        /**
+         * size of file written
+         */
+        protected long size;
+
+        public Sheet(String name, List<TalentTree> trees, int[] learned) {
+            this.name = name;
+            this.trees = trees;
+            this.learned = learned;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                File file = new File(fileName);
+                File parent = file.getAbsoluteFile().getParentFile();
+                if (!parent.isDirectory() && !parent.mkdirs()) throw new Exception("Directory " + parent + " could not be created.");
+
+                Document document = settings.createDocument();
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                    PdfWriter writer = PdfWriter.getInstance(document, out);
+                    settings.configureWriter(writer);
+                    document.open();
+                    settings.addMetaData(document);
+                    PdfContentByte canvas = writer.getDirectContent();
+                    for (int t = 0; t < trees.size(); t++) {
+                        BasePage page = basePages.get(trees.get(t).getId());
+                        document.newPage();
+                        canvas.addTemplate(writer.getImportedPage(getReader(page), 1), 0, 0);
+
+                        // stamp talents learned
+                        if (learned[t] == 0) continue;
+                        canvas.saveState();
+                        for (int boxes = learned[t]; boxes != 0; boxes &= boxes - 1) {
+                            PageGeneratorSimple.CrossOff crossOff = page.crossOffs[Integer.numberOfTrailingZeros(boxes)];
+                            if (crossOff != null) crossOff.fill(canvas);
+                        }
+                        canvas.restoreState();
+                    }
+                    document.close();
+                }
+                size = file.length();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
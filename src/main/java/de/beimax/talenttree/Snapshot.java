@@ -0,0 +1,380 @@
+package de.beimax.talenttree;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Precompiled binary snapshot of trees, strings and split header properties for fast startup.
+ *
+ * Format: magic "SWTT", version (short), payload length (int), CRC32 of payload (long), payload. The payload starts
+ * with descriptions of the source files (name, size, modification time) - a snapshot is used only if they match the
+ * current sources. All strings are kept in a table and referenced by number, numbers are stored as variable length
+ * integers.
+ */
+public class Snapshot {
+    private static final int MAGIC = 0x53575454; // SWTT
+    private static final short VERSION = 3;
+    private static final int HEADER_LENGTH = 4 + 2 + 4 + 8;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final List<TalentTree> trees;
+    private final StringCatalog catalog;
+
+    public Snapshot(List<TalentTree> trees, StringCatalog catalog) {
+        this.trees = trees;
+        this.catalog = catalog;
+    }
+
+    public List<TalentTree> getTrees() {
+        return trees;
+    }
+
+    public StringCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * describe source file, so changed sources can be detected
+     * @param url url of source
+     * @return description
+     * @throws Exception
+     */
+    public static String describe(URL url) throws Exception {
+        if ("file".equals(url.getProtocol())) {
+            File file = new File(url.toURI());
+            return file.getCanonicalPath() + "|" + file.length() + "|" + file.lastModified();
+        }
+        URLConnection connection = url.openConnection();
+        return url + "|" + connection.getContentLengthLong() + "|" + connection.getLastModified();
+    }
+
+    /**
+     * write snapshot
+     * @param file snapshot file
+     * @param sources descriptions of source files
+     * @throws Exception
+     */
+    public void write(File file, List<String> sources) throws Exception {
+        Writer out = new Writer();
+
+        // sources
+        out.writeVarInt(sources.size());
+        for (String source : sources) out.writeString(source);
+
+        // string table
+        Map<String, String> strings = catalog.getStrings();
+        out.ref(catalog.getLocale().toLanguageTag());
+        for (Map.Entry<String, String> entry : strings.entrySet()) {
+            out.ref(entry.getKey());
+            out.ref(entry.getValue());
+        }
+        Map<String, AbstractPageGenerator.HeaderProperties> headers = catalog.getHeaderProperties();
+        for (Map.Entry<String, AbstractPageGenerator.HeaderProperties> entry : headers.entrySet()) {
+            out.ref(entry.getKey());
+            out.ref(entry.getValue().title);
+            out.ref(entry.getValue().page);
+        }
+        List<String[]> cellSpecs = new ArrayList<>();
+        for (TalentTree tree : trees) {
+            for (String s : new String[]{tree.getId(), tree.getType(), tree.getHeader(), tree.getSubheader(),
+                    tree.getGroup(), tree.getSortKeyPrepend(), tree.getDescriptiveText()}) if (s != null) out.ref(s);
+            if (tree.getSkills() != null) for (String s : tree.getSkills()) out.ref(s);
+            if (tree.getBonusSkills() != null) for (String s : tree.getBonusSkills()) out.ref(s);
+            String[] specs = new String[tree.getCellCount()];
+            for (int i = 0; i < specs.length; i++) specs[i] = out.ref(tree.getCell(i).toString());
+            cellSpecs.add(specs);
+        }
+        out.writeTable();
+
+        // strings
+        out.writeRef(catalog.getLocale().toLanguageTag());
+        out.writeVarInt(strings.size());
+        for (Map.Entry<String, String> entry : strings.entrySet()) {
+            out.writeRef(entry.getKey());
+            out.writeRef(entry.getValue());
+        }
+
+        // header properties
+        out.writeVarInt(headers.size());
+        for (Map.Entry<String, AbstractPageGenerator.HeaderProperties> entry : headers.entrySet()) {
+            AbstractPageGenerator.HeaderProperties properties = entry.getValue();
+            out.writeRef(entry.getKey());
+            out.writeRef(properties.title);
+            out.writeRef(properties.page);
+            out.writeVarInt(properties.active ? 1 : 0);
+            out.writeVarInt(properties.status);
+        }
+
+        // trees
+        out.writeVarInt(trees.size());
+        for (int t = 0; t < trees.size(); t++) {
+            TalentTree tree = trees.get(t);
+            out.writeRef(tree.getId());
+            out.writeRef(tree.getType());
+            out.writeOptionalRef(tree.getHeader());
+            out.writeOptionalRef(tree.getSubheader());
+            out.writeOptionalRef(tree.getGroup());
+            out.writeOptionalRef(tree.getSortKeyPrepend());
+            out.writeOptionalRef(tree.getDescriptiveText());
+            out.writeOptionalRefs(tree.getSkills());
+            out.writeOptionalRefs(tree.getBonusSkills());
+
+            // cells by row
+            String[] specs = cellSpecs.get(t);
+            int rows = tree.getCellCount() == 0 ? 0 : tree.getCell(tree.getCellCount() - 1).getRow() + 1;
+            out.writeVarInt(rows);
+            for (int row = 0, i = 0; row < rows; row++) {
+                int start = i;
+                while (i < specs.length && tree.getCell(i).getRow() == row) i++;
+                out.writeVarInt(i - start);
+                for (int j = start; j < i; j++) out.writeRef(specs[j]);
+            }
+
+            out.writeVarInt(tree.getPathRowCount());
+            for (int row = 0; row < tree.getPathRowCount(); row++) {
+                out.writeVarInt(tree.getPaths(row));
+                out.writeVarInt(tree.getPathSize(row));
+            }
+            out.writeVarInt(tree.getSignatureNodes() + 1);
+        }
+
+        // header and payload - written to temporary file and moved, so readers never see partial files
+        byte[] payload = out.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            data.writeInt(MAGIC);
+            data.writeShort(VERSION);
+            data.writeInt(payload.length);
+            data.writeLong(crc.getValue());
+            data.write(payload);
+        } catch (Exception e) {
+            throw new Exception("Error writing snapshot " + file + ": " + e.getMessage());
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * read snapshot, if it matches sources
+     * @param file snapshot file
+     * @param sources descriptions of current source files
+     * @return snapshot or null, if file does not exist or sources have changed
+     * @throws Exception if snapshot is corrupt, the message giving the reason
+     */
+    public static Snapshot read(File file, List<String> sources) throws Exception {
+        if (!file.exists()) return null;
+
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            // header
+            if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC) throw new Exception("not a snapshot file");
+            if (buffer.getShort() != VERSION) return null; // written by other version, compile again
+            int length = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (length != buffer.remaining()) throw new Exception("file is truncated");
+            CRC32 crc = new CRC32();
+            byte[] chunk = new byte[8192];
+            ByteBuffer payload = buffer.slice();
+            while (payload.hasRemaining()) {
+                int n = Math.min(chunk.length, payload.remaining());
+                payload.get(chunk, 0, n);
+                crc.update(chunk, 0, n);
+            }
+            if (crc.getValue() != checksum) throw new Exception("checksum mismatch");
+
+            Reader in = new Reader(buffer);
+
+            // sources
+            int sourceCount = in.readVarInt();
+            List<String> snapshotSources = new ArrayList<>(sourceCount);
+            for (int i = 0; i < sourceCount; i++) snapshotSources.add(in.readString());
+            if (!snapshotSources.equals(sources)) return null;
+
+            in.readTable();
+
+            // strings
+            Locale locale = Locale.forLanguageTag(in.readRef());
+            Properties strings = new Properties();
+            for (int i = in.readVarInt(); i > 0; i--) strings.setProperty(in.readRef(), in.readRef());
+            StringCatalog catalog = new StringCatalog(strings, locale);
+
+            // header properties
+            for (int i = in.readVarInt(); i > 0; i--) {
+                String key = in.readRef();
+                catalog.putHeaderProperties(key, new AbstractPageGenerator.HeaderProperties(in.readRef(), in.readRef(),
+                        in.readVarInt() != 0, (char) in.readVarInt()));
+            }
+
+            // trees
+            int treeCount = in.readVarInt();
+            List<TalentTree> trees = new ArrayList<>(treeCount);
+            for (int t = 0; t < treeCount; t++) {
+                TalentTree.Builder builder = new TalentTree.Builder();
+                builder.set("id", in.readRef());
+                builder.set("type", in.readRef());
+                for (String key : new String[]{"header", "subheader", "group", "sortKeyPrepend", "descriptiveText"}) {
+                    String value = in.readOptionalRef();
+                    if (value != null) builder.set(key, value);
+                }
+                List<String> skills = in.readOptionalRefs();
+                if (skills != null) builder.setStrings("skills", skills);
+                skills = in.readOptionalRefs();
+                if (skills != null) builder.setStrings("bonus_skills", skills);
+
+                for (int rows = in.readVarInt(); rows > 0; rows--) {
+                    int cells = in.readVarInt();
+                    List<String> specs = new ArrayList<>(cells);
+                    for (int i = 0; i < cells; i++) specs.add(in.readRef());
+                    builder.addTalentRow(specs);
+                }
+                for (int rows = in.readVarInt(); rows > 0; rows--) builder.addPathMask(in.readVarInt(), in.readVarInt());
+                builder.setSignatureMask(in.readVarInt() - 1);
+                trees.add(builder.build());
+            }
+
+            return new Snapshot(trees, catalog);
+        } catch (Exception e) {
+            throw new Exception(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Payload writer with string table
+     */
+    private static class Writer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final Map<String, Integer> table = new LinkedHashMap<>();
+
+        /**
+         * add string to table
+         * @param s string
+         * @return string
+         */
+        String ref(String s) {
+            if (!table.containsKey(s)) table.put(s, table.size());
+            return s;
+        }
+
+        void writeTable() {
+            writeVarInt(table.size());
+            for (String s : table.keySet()) writeString(s);
+        }
+
+        void writeRef(String s) {
+            writeVarInt(table.get(s));
+        }
+
+        void writeOptionalRef(String s) {
+            writeVarInt(s == null ? 0 : table.get(s) + 1);
+        }
+
+        void writeOptionalRefs(List<String> strings) {
+            if (strings == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeVarInt(strings.size() + 1);
+            for (String s : strings) writeRef(s);
+        }
+
+        void writeString(String s) {
+            byte[] b = s.getBytes(UTF8);
+            writeVarInt(b.length);
+            bytes.write(b, 0, b.length);
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                bytes.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes.write(value);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Payload reader with string table
+     */
+    private static class Reader {
+        private final ByteBuffer buffer;
+        private String[] table;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void readTable() throws Exception {
+            table = new String[readVarInt()];
+            for (int i = 0; i < table.length; i++) table[i] = readString();
+        }
+
+        String readRef() throws Exception {
+            return table[readVarInt()];
+        }
+
+        String readOptionalRef() throws Exception {
+            int i = readVarInt();
+            return i == 0 ? null : table[i - 1];
+        }
+
+        List<String> readOptionalRefs() throws Exception {
+            int n = readVarInt();
+            if (n == 0) return null;
+            List<String> strings = new ArrayList<>(n - 1);
+            for (int i = 1; i < n; i++) strings.add(readRef());
+            return strings;
+        }
+
+        String readString() throws Exception {
+            byte[] b = new byte[readVarInt()];
+            buffer.get(b);
+            return new String(b, UTF8);
+        }
+
+        int readVarInt() throws Exception {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new Exception("invalid number");
+        }
+    }
+}
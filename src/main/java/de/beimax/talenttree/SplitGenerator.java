@@ -0,0 +1,249 @@
+package de.beimax.talenttree;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Split mode: write one PDF per tree or per group of trees (group of signature trees, header of all others) instead
+ * of a single book. File names are created from a pattern:
+ *
+ * {FileName}  FileName of translation file (or --output without .pdf)
+ * {name}      id of tree or group
+ * {pageSize}  page size
+ *
+ * Files are rendered concurrently. A JSON manifest lists each file with its trees, size and SHA-256 hash. Optionally,
+ * all files and the manifest are bundled into a ZIP file, written in sort order while the remaining files are still
+ * rendered.
+ */
+public class SplitGenerator {
+    public static final String SPLIT_TREE = "tree";
+    public static final String SPLIT_GROUP = "group";
+
+    /**
+     * default file name pattern
+     */
+    public static final String DEFAULT_PATTERN = "{FileName}_{name}.pdf";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * generator holding command line settings
+     */
+    private final PDFGenerator settings;
+
+    /**
+     * renderer shared by all files, created when strings and data are loaded
+     */
+    private Renderer renderer;
+
+    /**
+     * Constructor
+     * @param settings generator holding command line settings
+     */
+    public SplitGenerator(PDFGenerator settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * render all files, write manifest and bundle
+     * @throws Exception
+     */
+    public void generate() throws Exception {
+        long start = System.nanoTime();
+
+        // load strings and data once - all files share them
+        settings.initialize();
+        renderer = new Renderer(RenderContext.of(settings));
+        String pattern = settings.getSplitPattern() != null ? settings.getSplitPattern() : DEFAULT_PATTERN;
+        if (!pattern.contains("{name}")) throw new Exception("Split file name pattern must contain {name}.");
+        String baseName = settings.getFileName();
+        baseName = baseName.substring(0, baseName.length() - 4);
+
+        // trees per file, in sort order
+        Map<String, Part> parts = new LinkedHashMap<>();
+        Set<String> fileNames = new HashSet<>();
+        for (TalentTree tree : settings.getSortedTrees()) {
+            String name = getPartName(tree);
+            Part part = parts.get(name);
+            if (part == null) {
+                part = new Part(name, pattern.replace("{FileName}", baseName).replace("{name}", sanitize(name))
+                        .replace("{pageSize}", settings.getPageSize()));
+                if (!fileNames.add(part.fileName))
+                    throw new Exception("Output file " + part.fileName + " is created for more than one " + settings.getSplit() + ".");
+                parts.put(name, part);
+            }
+            part.trees.add(tree);
+        }
+
+        // render files concurrently
+        int parallelism = settings.getThreads() > 1 ? settings.getThreads() : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Part part : parts.values()) pool.execute(part);
+
+            // collect results in sort order, bundling finished files
+            File manifestFile = new File(settings.getManifestFile() != null ? settings.getManifestFile() : baseName + ".json");
+            ZipOutputStream zip = null;
+            if (settings.getZipFile() != null)
+                zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(settings.getZipFile())));
+            try {
+                for (Part part : parts.values()) {
+                    part.join();
+                    if (zip != null) addToZip(zip, part.fileName, new File(part.fileName));
+                    settings.getConsole().println("Created " + part.fileName + " (" + part.trees.size() + " pages, " + (part.size + 1023) / 1024 + " KB)");
+                }
+
+                writeManifest(manifestFile, parts.values());
+                if (zip != null) addToZip(zip, manifestFile.getName(), manifestFile);
+            } finally {
+                if (zip != null) zip.close();
+            }
+        } catch (RuntimeException e) {
+            // unwrap exceptions thrown by renderers - joining rethrows copies of them, wrapping the original
+            Throwable cause = e;
+            while (cause instanceof RuntimeException && cause.getCause() != null) cause = cause.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // keep fitted font sizes for next run
+        if (settings.getFitCacheFile() != null) settings.getFitCache().save(new File(settings.getFitCacheFile()));
+
+        settings.getConsole().println("Split: " + parts.size() + " files done in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * @param tree tree
+     * @return id of file tree is written to
+     */
+    protected String getPartName(TalentTree tree) {
+        if (SPLIT_TREE.equals(settings.getSplit())) return tree.getId();
+        return tree.getGroup() != null ? tree.getGroup() : tree.getHeader();
+    }
+
+    /**
+     * make id safe to use within file names
+     * @param name id
+     * @return id with characters other than letters, digits, dot, dash and underscore replaced by underscores
+     */
+    protected static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * copy file into ZIP bundle
+     * @param zip ZIP bundle
+     * @param entryName name within bundle
+     * @param file file to copy
+     * @throws IOException
+     */
+    protected void addToZip(ZipOutputStream zip, String entryName, File file) throws IOException {
+        zip.putNextEntry(new ZipEntry(entryName.replace(File.separatorChar, '/')));
+        Files.copy(file.toPath(), zip);
+        zip.closeEntry();
+    }
+
+    /**
+     * write JSON manifest of files
+     * @param file manifest file
+     * @param parts files written
+     * @throws Exception
+     */
+    protected void writeManifest(File file, Collection<Part> parts) throws Exception {
+        StringBuilder sb = new StringBuilder("{\n  \"split\": ").append(RenderReport.quote(settings.getSplit()))
+                .append(",\n  \"pageSize\": ").append(RenderReport.quote(settings.getPageSize()))
+                .append(",\n  \"files\": [");
+        boolean first = true;
+        for (Part part : parts) {
+            sb.append(first ? "\n" : ",\n").append("    {\"file\": ").append(RenderReport.quote(part.fileName))
+                    .append(", \"name\": ").append(RenderReport.quote(part.name))
+                    .append(", \"size\": ").append(part.size)
+                    .append(", \"sha256\": ").append(RenderReport.quote(part.sha256))
+                    .append(", \"trees\": [");
+            for (int i = 0; i < part.trees.size(); i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(RenderReport.quote(part.trees.get(i).getId()));
+            }
+            sb.append("]}");
+            first = false;
+        }
+        sb.append("\n  ]\n}\n");
+
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), UTF8)) {
+            out.write(sb.toString());
+        } catch (IOException e) {
+            throw new Exception("Error writing manifest " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * single output file, rendered as fork/join task
+     */
+    protected class Part extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        protected final String name;
+        protected final String fileName;
+        protected final List<TalentTree> trees = new ArrayList<>();
+
+        /**
+         * size and hash of file written
+         */
+        protected long size;
+        protected String sha256;
+
+        public Part(String name, String fileName) {
+            this.name = name;
+            this.fileName = fileName;
+        }
+
+        @Override
+        protected Void compute() {
+            try {
+                File file = new File(fileName);
+                File parent = file.getAbsoluteFile().getParentFile();
+                if (!parent.isDirectory() && !parent.mkdirs()) throw new Exception("Directory " + parent + " could not be created.");
+
+                // hash file while writing it
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(file)), md)) {
+                    renderer.render(trees, out);
+                }
+                size = file.length();
+                sha256 = String.format("%064x", new BigInteger(1, md.digest()));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package de.beimax.talenttree;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Loaded strings file and everything derived from it. Can be shared by several generators. Thread safe.
+ */
+public class StringCatalog {
+    /**
+     * localized strings, unmodifiable
+     */
+    private final Map<String, String> strings;
+
+    /**
+     * compiled rich texts
+     */
+    private final ConcurrentMap<String, RichText> richTexts = new ConcurrentHashMap<>();
+
+    /**
+     * split header properties
+     */
+    private final ConcurrentMap<String, AbstractPageGenerator.HeaderProperties> headerProperties = new ConcurrentHashMap<>();
+
+    /**
+     * collators shared by all catalogs of a locale
+     */
+    private static final ConcurrentMap<Locale, Collator> collators = new ConcurrentHashMap<>();
+
+    /**
+     * collation keys of sorted texts (e.g. skill names)
+     */
+    private final ConcurrentMap<String, CollationKey> collationKeys = new ConcurrentHashMap<>();
+
+    /**
+     * locale of strings, used for sorting
+     */
+    private final Locale locale;
+
+    public StringCatalog(Properties strings) {
+        this(strings, Locale.getDefault());
+    }
+
+    /**
+     * Constructor
+     * @param strings localized strings - copied, so later changes do not affect the catalog
+     * @param locale locale of strings, used for sorting
+     */
+    public StringCatalog(Properties strings, Locale locale) {
+        Map<String, String> copy = new HashMap<>();
+        for (String key : strings.stringPropertyNames()) copy.put(key, strings.getProperty(key));
+        this.strings = Collections.unmodifiableMap(copy);
+        this.locale = locale;
+    }
+
+    /**
+     * @return localized strings, unmodifiable
+     */
+    public Map<String, String> getStrings() {
+        return strings;
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * @return collator of locale - shared, its methods are synchronized
+     */
+    public Collator getCollator() {
+        Collator collator = collators.get(locale);
+        if (collator == null) {
+            collator = Collator.getInstance(locale);
+            Collator other = collators.putIfAbsent(locale, collator);
+            if (other != null) collator = other;
+        }
+        return collator;
+    }
+
+    /**
+     * @param text text to sort
+     * @return collation key of text in locale of strings, created once per text
+     */
+    public CollationKey getCollationKey(String text) {
+        CollationKey key = collationKeys.get(text);
+        if (key == null) {
+            key = getCollator().getCollationKey(text);
+            collationKeys.putIfAbsent(text, key);
+        }
+        return key;
+    }
+
+    /**
+     * Get compiled rich text of localized string
+     * @param key language key
+     * @return compiled text
+     * @throws Exception
+     */
+    public RichText getRichText(String key) throws Exception {
+        RichText text = richTexts.get(key);
+        if (text == null) {
+            String local = strings.get(key);
+            if (local == null) throw new Exception("No translation for " + key + "!");
+            text = RichText.compile(local);
+            richTexts.putIfAbsent(key, text);
+        }
+        return text;
+    }
+
+    /**
+     * Get split header properties of talent
+     * @param key talent key
+     * @return header properties
+     * @throws Exception
+     */
+    public AbstractPageGenerator.HeaderProperties getHeaderProperties(String key) throws Exception {
+        AbstractPageGenerator.HeaderProperties properties = headerProperties.get(key);
+        if (properties == null) {
+            String local = strings.get(key + "Data");
+            if (local == null) throw new Exception("No translation for " + key + "Data!");
+            properties = AbstractPageGenerator.HeaderProperties.parse(key, local);
+            headerProperties.putIfAbsent(key, properties);
+        }
+        return properties;
+    }
+
+    /**
+     * @return header properties split so far
+     */
+    public Map<String, AbstractPageGenerator.HeaderProperties> getHeaderProperties() {
+        return Collections.unmodifiableMap(headerProperties);
+    }
+
+    /**
+     * add header properties split before (e.g. loaded from snapshot)
+     * @param key talent key
+     * @param properties header properties
+     */
+    void putHeaderProperties(String key, AbstractPageGenerator.HeaderProperties properties) {
+        headerProperties.put(key, properties);
+    }
+}
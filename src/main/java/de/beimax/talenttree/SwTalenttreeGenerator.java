@@ -4,6 +4,10 @@ import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.spi.OptionHandler;
 
+import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+
 /**
  * PDF Generator for Star Wars Talent sheets
  * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
@@ -60,11 +64,48 @@ public class SwTalenttreeGenerator {
 
             System.err.println("Add -h option to print help.");
 
-            // initialize stuff
-            generator.initialize();
+            if (generator.getCompileFile() != null) {
+                // write binary snapshot only
+                generator.compile(new File(generator.getCompileFile()));
+                generator.getConsole().println("Snapshot " + generator.getCompileFile() + " written.");
+                return;
+            } else if (generator.getServePort() != null) {
+                // keep running and render PDFs on request
+                new RenderServer(generator).start();
+                return;
+            } else if (generator.getPlan() != null) {
+                // print cheapest purchase of talents, no PDF
+                generator.initialize();
+                int parallelism = generator.getThreads() > 1 ? generator.getThreads() : Runtime.getRuntime().availableProcessors();
+                List<TalentTree> trees = generator.getTrees();
+                try (TalentPlanner planner = new TalentPlanner(trees, parallelism)) {
+                    TalentPlanner.Plan plan = planner.plan(trees, TalentPlanner.parseOwned(trees, generator.getOwned()),
+                            TalentPlanner.parseTargets(generator.getPlan()));
+                    plan.print(System.out, generator.getCatalog());
+                }
+                return;
+            } else if (generator.getRosterFile() != null) {
+                // generate one PDF per character
+                new SheetGenerator(generator).generate();
+            } else if (generator.getSplit() != null) {
+                // generate one PDF per tree or group
+                new SplitGenerator(generator).generate();
+            } else if (generator.getBatchFile() != null) {
+                // generate all PDFs listed in manifest
+                new BatchGenerator(generator).generate();
+            } else {
+                // initialize stuff
+                generator.initialize();
+
+                // generate PDFs
+                generator.generate();
+            }
 
-            // generate PDFs
-            generator.generate();
+            PrintStream console = generator.getConsole();
+            console.println(generator.getFitCache().getSummary());
+            if (generator.getPageCache() != null) console.println(generator.getPageCache().getSummary());
+            if (generator.getReport() != null) console.println(generator.getReport().getSummary());
+            if (generator.getOutputSummary() != null) console.println(generator.getOutputSummary());
         } catch (Exception e) {
             if (e.getMessage() == null)
                 e.printStackTrace();
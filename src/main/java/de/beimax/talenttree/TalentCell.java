@@ -0,0 +1,132 @@
+package de.beimax.talenttree;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Single talent box of a tree, decoded from cell specs like "Key", "Key*4" (spanning four columns), "Key|10" (custom
+ * cost) or "Key|10*4". Immutable.
+ */
+public final class TalentCell {
+    /**
+     * cost is calculated from row
+     */
+    public static final int DEFAULT_COST = -1;
+
+    /**
+     * cost is not printed
+     */
+    public static final int NO_COST = 0;
+
+    private final String key;
+    private final int row;
+    private final int col;
+    private final int span;
+    private final int cost;
+
+    public TalentCell(String key, int row, int col, int span, int cost) {
+        this.key = key;
+        this.row = row;
+        this.col = col;
+        this.span = span;
+        this.cost = cost;
+    }
+
+    /**
+     * decode cell spec
+     * @param spec cell spec
+     * @param row row of cell
+     * @param col first column of cell
+     * @return decoded cell
+     * @throws Exception if spec is malformed
+     */
+    public static TalentCell parse(String spec, int row, int col) throws Exception {
+        String key = spec;
+        int span = 1, cost = DEFAULT_COST;
+
+        // span: *1 to *4 at the end
+        int pos = key.lastIndexOf('*');
+        if (pos >= 0) {
+            if (pos != key.length() - 2 || key.charAt(pos + 1) < '1' || key.charAt(pos + 1) > '4')
+                throw new Exception("Talent " + spec + " must span 1 to 4 columns (e.g. Key*2).");
+            span = key.charAt(pos + 1) - '0';
+            key = key.substring(0, pos);
+        }
+
+        // custom cost: |number
+        pos = key.lastIndexOf('|');
+        if (pos >= 0) {
+            try {
+                cost = Integer.parseInt(key.substring(pos + 1));
+            } catch (NumberFormatException e) {
+                cost = -1;
+            }
+            if (cost < 0) throw new Exception("Talent " + spec + " has an invalid cost (e.g. Key|10).");
+            key = key.substring(0, pos);
+        }
+
+        if (key.isEmpty() || key.indexOf('*') >= 0 || key.indexOf('|') >= 0)
+            throw new Exception("Talent " + spec + " is malformed.");
+        if (col + span > 4) throw new Exception("Talent " + spec + " does not fit into row " + (row + 1) + ".");
+
+        return new TalentCell(key.intern(), row, col, span, cost);
+    }
+
+    /**
+     * @return talent key in strings file
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return row of cell (0-4)
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @return first column of cell (0-3)
+     */
+    public int getCol() {
+        return col;
+    }
+
+    /**
+     * @return number of columns spanned (1-4)
+     */
+    public int getSpan() {
+        return span;
+    }
+
+    /**
+     * @return custom cost, DEFAULT_COST or NO_COST
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(key);
+        if (cost != DEFAULT_COST) sb.append('|').append(cost);
+        if (span != 1) sb.append('*').append(span);
+        return sb.toString();
+    }
+}
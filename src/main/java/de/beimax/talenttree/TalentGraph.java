@@ -0,0 +1,363 @@
+package de.beimax.talenttree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * Graph of the talent boxes of a tree, compiled from the talent grid and the path rows. Boxes are numbered in row
+ * order (like the cells of the tree), sets of boxes are bit masks - a tree has 20 boxes at most, so all queries work
+ * on ints and answer in well under a microsecond. Boxes of the first row can always be bought, other boxes if a path
+ * connects them to a box owned. Immutable.
+ */
+public final class TalentGraph {
+    private final TalentTree tree;
+
+    /**
+     * boxes connected to each box by paths
+     */
+    private final int[] adjacency;
+
+    /**
+     * XP cost of each box
+     */
+    private final int[] costs;
+
+    /**
+     * boxes of the first row
+     */
+    private final int entries;
+
+    /**
+     * boxes reachable from the first row
+     */
+    private final int reachable;
+
+    /**
+     * problems found in data
+     */
+    private final List<String> warnings;
+
+    private TalentGraph(TalentTree tree, int[] adjacency, int[] costs, int entries, List<String> warnings) {
+        this.tree = tree;
+        this.adjacency = adjacency;
+        this.costs = costs;
+        this.entries = entries;
+        this.reachable = closure(entries);
+        this.warnings = warnings;
+    }
+
+    /**
+     * compile graph of tree
+     * @param tree talent tree
+     * @return graph
+     */
+    public static TalentGraph compile(TalentTree tree) {
+        int count = tree.getCellCount();
+        int[] adjacency = new int[count];
+        int[] costs = new int[count];
+        int entries = 0;
+        List<String> warnings = new ArrayList<>();
+
+        // box covering each field of the grid
+        int rows = 0;
+        int[][] grid = new int[TalentTree.ROWS][TalentTree.COLS];
+        for (int[] row : grid) Arrays.fill(row, -1);
+        for (int i = 0; i < count; i++) {
+            TalentCell cell = tree.getCell(i);
+            for (int col = cell.getCol(); col < cell.getCol() + cell.getSpan(); col++) grid[cell.getRow()][col] = i;
+            costs[i] = getCost(cell);
+            if (cell.getRow() == 0) entries |= 1 << i;
+            rows = Math.max(rows, cell.getRow() + 1);
+        }
+
+        if (tree.getPathRowCount() != 2 * rows - 1)
+            warnings.add("Tree has " + tree.getPathRowCount() + " path rows, " + rows + " talent rows need " + (2 * rows - 1) + ".");
+
+        // even path rows link boxes horizontally, odd ones vertically
+        for (int row = 0; row < tree.getPathRowCount(); row++) {
+            boolean horizontal = row % 2 == 0;
+            int size = horizontal ? TalentTree.COLS - 1 : TalentTree.COLS;
+            if (tree.getPathSize(row) != size)
+                warnings.add("Path row " + (row + 1) + " has " + tree.getPathSize(row) + " entries, the grid needs " + size + ".");
+
+            int talentRow = row / 2;
+            for (int paths = tree.getPaths(row), col = 0; paths != 0; paths >>>= 1, col++) {
+                if ((paths & 1) == 0) continue;
+                int from = talentRow < TalentTree.ROWS ? grid[talentRow][col] : -1;
+                int to = -1;
+                if (horizontal) {
+                    if (col + 1 < TalentTree.COLS && talentRow < TalentTree.ROWS) to = grid[talentRow][col + 1];
+                } else if (talentRow + 1 < TalentTree.ROWS) to = grid[talentRow + 1][col];
+
+                if (from < 0 || to < 0 || from == to) {
+                    warnings.add("Path " + (col + 1) + " of path row " + (row + 1) + " does not connect two talents.");
+                    continue;
+                }
+                adjacency[from] |= 1 << to;
+                adjacency[to] |= 1 << from;
+            }
+        }
+
+        TalentGraph graph = new TalentGraph(tree, adjacency, costs, entries, warnings);
+        for (int unreachable = graph.getAll() & ~graph.reachable; unreachable != 0; unreachable &= unreachable - 1) {
+            TalentCell cell = tree.getCell(Integer.numberOfTrailingZeros(unreachable));
+            warnings.add("Talent " + cell.getKey() + " (row " + (cell.getRow() + 1) + ", column " + (cell.getCol() + 1)
+                    + ") can not be reached.");
+        }
+        return graph;
+    }
+
+    /**
+     * @param cell talent box
+     * @return XP cost of box - custom cost or five times the row number
+     */
+    public static int getCost(TalentCell cell) {
+        return cell.getCost() == TalentCell.DEFAULT_COST ? (cell.getRow() + 1) * 5 : cell.getCost();
+    }
+
+    public TalentTree getTree() {
+        return tree;
+    }
+
+    /**
+     * @return number of boxes
+     */
+    public int getNodeCount() {
+        return costs.length;
+    }
+
+    /**
+     * @return mask of all boxes
+     */
+    public int getAll() {
+        return (1 << costs.length) - 1;
+    }
+
+    /**
+     * @param node number of box
+     * @return XP cost of box
+     */
+    public int getCost(int node) {
+        return costs[node];
+    }
+
+    /**
+     * @param nodes mask of boxes
+     * @return XP cost of all boxes
+     */
+    public int getCostOf(int nodes) {
+        int sum = 0;
+        for (; nodes != 0; nodes &= nodes - 1) sum += costs[Integer.numberOfTrailingZeros(nodes)];
+        return sum;
+    }
+
+    /**
+     * @param node number of box
+     * @return mask of boxes connected by paths
+     */
+    public int getNeighbours(int node) {
+        return adjacency[node];
+    }
+
+    /**
+     * @return mask of boxes in first row
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return mask of boxes reachable from the first row
+     */
+    public int getReachable() {
+        return reachable;
+    }
+
+    /**
+     * @param row talent row
+     * @param col column
+     * @return number of box covering field or -1
+     */
+    public int getNode(int row, int col) {
+        for (int i = 0; i < costs.length; i++) {
+            TalentCell cell = tree.getCell(i);
+            if (cell.getRow() == row && col >= cell.getCol() && col < cell.getCol() + cell.getSpan()) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param key talent key
+     * @return mask of boxes with this talent (ranked talents appear several times)
+     */
+    public int find(String key) {
+        int nodes = 0;
+        for (int i = 0; i < costs.length; i++)
+            if (tree.getCell(i).getKey().equals(key)) nodes |= 1 << i;
+        return nodes;
+    }
+
+    /**
+     * @return problems found in data, e.g. boxes that can not be reached
+     */
+    public List<String> getWarnings() {
+        return Collections.unmodifiableList(warnings);
+    }
+
+    /**
+     * @param owned mask of boxes owned
+     * @return mask of boxes that can be bought next
+     */
+    public int getUnlockable(int owned) {
+        int nodes = entries;
+        for (int o = owned; o != 0; o &= o - 1) nodes |= adjacency[Integer.numberOfTrailingZeros(o)];
+        return nodes & ~owned & getAll();
+    }
+
+    /**
+     * @param owned mask of boxes owned
+     * @return true if each box owned could have been bought, i.e. is connected to the first row by boxes owned
+     */
+    public boolean isValid(int owned) {
+        int seen = owned & entries, frontier = seen;
+        while (frontier != 0) {
+            int next = 0;
+            for (; frontier != 0; frontier &= frontier - 1) next |= adjacency[Integer.numberOfTrailingZeros(frontier)];
+            frontier = next & owned & ~seen;
+            seen |= frontier;
+        }
+        return seen == owned;
+    }
+
+    /**
+     * @param owned mask of boxes owned
+     * @param node number of box
+     * @return true if box is owned or can be bought eventually
+     */
+    public boolean isReachable(int owned, int node) {
+        return ((reachable | closure(owned)) & 1 << node) != 0;
+    }
+
+    /**
+     * @param owned mask of boxes owned
+     * @param node number of box
+     * @return minimum XP to buy box including the boxes leading to it, 0 if owned, -1 if it can not be reached
+     */
+    public int getMinCost(int owned, int node) {
+        int path = getCheapestPath(owned, node);
+        return path < 0 ? -1 : getCostOf(path);
+    }
+
+    /**
+     * minimum XP to reach each box, like getMinCost for all boxes at once
+     * @param owned mask of boxes owned
+     * @param dist filled with XP per box: 0 if owned, -1 if box can not be reached
+     */
+    public void getMinCosts(int owned, int[] dist) {
+        Arrays.fill(dist, 0, costs.length, -1);
+        for (int o = owned; o != 0; o &= o - 1) dist[Integer.numberOfTrailingZeros(o)] = 0;
+        int open = getUnlockable(owned), done = owned;
+        for (int o = open; o != 0; o &= o - 1) {
+            int n = Integer.numberOfTrailingZeros(o);
+            dist[n] = costs[n];
+        }
+
+        while (open != 0) {
+            int best = -1;
+            for (int o = open; o != 0; o &= o - 1) {
+                int n = Integer.numberOfTrailingZeros(o);
+                if (best < 0 || dist[n] < dist[best]) best = n;
+            }
+            open &= ~(1 << best);
+            done |= 1 << best;
+            for (int o = adjacency[best] & ~done; o != 0; o &= o - 1) {
+                int n = Integer.numberOfTrailingZeros(o);
+                int d = dist[best] + costs[n];
+                if (dist[n] < 0 || d < dist[n]) {
+                    dist[n] = d;
+                    open |= 1 << n;
+                }
+            }
+        }
+    }
+
+    /**
+     * Dijkstra over box costs, starting at all boxes that can be bought next
+     * @param owned mask of boxes owned
+     * @param node number of box
+     * @return mask of boxes to buy to get box at minimum XP, 0 if owned, -1 if it can not be reached
+     */
+    public int getCheapestPath(int owned, int node) {
+        if ((owned & 1 << node) != 0) return 0;
+        int count = costs.length;
+        int[] dist = new int[count];
+        int[] prev = new int[count];
+        int open = getUnlockable(owned), done = owned;
+        for (int o = open; o != 0; o &= o - 1) {
+            int n = Integer.numberOfTrailingZeros(o);
+            dist[n] = costs[n];
+            prev[n] = -1;
+        }
+
+        while (open != 0) {
+            int best = -1;
+            for (int o = open; o != 0; o &= o - 1) {
+                int n = Integer.numberOfTrailingZeros(o);
+                if (best < 0 || dist[n] < dist[best]) best = n;
+            }
+            if (best == node) {
+                int path = 0;
+                for (int n = node; n >= 0; n = prev[n]) path |= 1 << n;
+                return path;
+            }
+            open &= ~(1 << best);
+            done |= 1 << best;
+            for (int o = adjacency[best] & ~done; o != 0; o &= o - 1) {
+                int n = Integer.numberOfTrailingZeros(o);
+                int d = dist[best] + costs[n];
+                if ((open & 1 << n) == 0 || d < dist[n]) {
+                    dist[n] = d;
+                    prev[n] = best;
+                    open |= 1 << n;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param nodes mask of boxes
+     * @return mask of boxes connected to them by paths, including themselves
+     */
+    private int closure(int nodes) {
+        int seen = nodes, frontier = nodes;
+        while (frontier != 0) {
+            int next = 0;
+            for (; frontier != 0; frontier &= frontier - 1) next |= adjacency[Integer.numberOfTrailingZeros(frontier)];
+            frontier = next & ~seen;
+            seen |= frontier;
+        }
+        return seen;
+    }
+}
@@ -0,0 +1,543 @@
+package de.beimax.talenttree;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * Purchase planner: finds the cheapest talents to buy in the trees of a character, so that it owns the ranks of
+ * talents wanted (e.g. Dodge twice and Master Starhopper), and the order to buy them in.
+ *
+ * Each tree is searched on its own: for every number of ranks a tree might contribute, a branch-and-bound search over
+ * bit masks of boxes finds the cheapest boxes to buy. Masks are memoized in a bit set, so each set of boxes is
+ * expanded once only. Searches run concurrently in a fork-join pool, their results are combined by dynamic
+ * programming over the ranks still missing.
+ *
+ * TalentPlanner planner = new TalentPlanner(context);
+ * TalentPlanner.Plan plan = planner.plan(TreeFilter.parse("ExplorerFringer,ExplorerScout"), "ExplorerFringer:GalaxyMapper",
+ *         "Dodge:2,MasterStarhopper");
+ *
+ * Planners created with a number of threads run searches in a pool of their own, which is shut down by close().
+ * Thread safe.
+ */
+public class TalentPlanner implements AutoCloseable {
+    /**
+     * position of owned box: row.column, starting at 1
+     */
+    private static final Pattern POSITION = Pattern.compile("(\\d)\\.(\\d)");
+
+    private final List<TalentTree> trees;
+    private final ForkJoinPool pool;
+
+    /**
+     * true if the pool has been created by this planner
+     */
+    private final boolean ownPool;
+
+    /**
+     * Constructor - searches run in the common pool
+     * @param context context holding trees
+     */
+    public TalentPlanner(RenderContext context) {
+        this.trees = context.getTrees();
+        this.pool = ForkJoinPool.commonPool();
+        this.ownPool = false;
+    }
+
+    /**
+     * Constructor - searches run in a pool of their own, call close() when done
+     * @param trees trees to plan in
+     * @param parallelism number of searches run at the same time
+     */
+    public TalentPlanner(List<TalentTree> trees, int parallelism) {
+        this.trees = trees;
+        this.pool = new ForkJoinPool(parallelism);
+        this.ownPool = true;
+    }
+
+    /**
+     * shut down the pool created by this planner - no plans can be made afterwards
+     */
+    @Override
+    public void close() {
+        if (ownPool) pool.shutdown();
+    }
+
+    /**
+     * @param filter selection, null for all trees
+     * @return trees selected in order of data file
+     * @throws Exception if no tree is selected
+     */
+    public List<TalentTree> select(TreeFilter filter) throws Exception {
+        List<TalentTree> selected = new ArrayList<>();
+        for (TalentTree tree : trees)
+            if (filter == null || filter.matches(tree.getId())) selected.add(tree);
+        if (selected.isEmpty()) throw new Exception("No talent trees selected.");
+        return selected;
+    }
+
+    /**
+     * parse talents wanted
+     * @param targets comma separated talent keys, ranks appended after colon (e.g. Dodge:2,MasterStarhopper)
+     * @return ranks per talent key
+     * @throws Exception
+     */
+    public static Map<String, Integer> parseTargets(String targets) throws Exception {
+        Map<String, Integer> ranks = new LinkedHashMap<>();
+        for (String target : targets.split(",")) {
+            target = target.trim();
+            if (target.isEmpty()) continue;
+            int count = 1;
+            int pos = target.indexOf(':');
+            if (pos >= 0) {
+                try {
+                    count = Integer.parseInt(target.substring(pos + 1));
+                } catch (NumberFormatException e) {
+                    count = 0;
+                }
+                if (count < 1) throw new Exception("Talent " + target + " must have a positive number of ranks (e.g. Dodge:2).");
+                target = target.substring(0, pos);
+            }
+            Integer before = ranks.get(target);
+            ranks.put(target, before == null ? count : before + count);
+        }
+        if (ranks.isEmpty()) throw new Exception("No talents to plan for.");
+        return ranks;
+    }
+
+    /**
+     * parse talents owned
+     * @param trees trees of character
+     * @param owned comma separated TreeId:Key (boxes of ranked talents are taken in row order) or TreeId:row.column,
+     *              null for none
+     * @return mask of boxes owned per tree
+     * @throws Exception
+     */
+    public static int[] parseOwned(List<TalentTree> trees, String owned) throws Exception {
+        int[] masks = new int[trees.size()];
+        if (owned == null) return masks;
+        for (String entry : owned.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+            int pos = entry.indexOf(':');
+            if (pos < 0) throw new Exception("Owned talent " + entry + " must name its tree (e.g. ExplorerFringer:GalaxyMapper).");
+            String id = entry.substring(0, pos), talent = entry.substring(pos + 1);
+            int t = 0;
+            while (t < trees.size() && !trees.get(t).getId().equals(id)) t++;
+            if (t == trees.size()) throw new Exception("Tree " + id + " of owned talent " + entry + " is not selected.");
+
+            TalentGraph graph = trees.get(t).getGraph();
+            int node;
+            Matcher matcher = POSITION.matcher(talent);
+            if (matcher.matches()) {
+                node = graph.getNode(Integer.parseInt(matcher.group(1)) - 1, Integer.parseInt(matcher.group(2)) - 1);
+                if (node < 0) throw new Exception("Tree " + id + " has no talent at " + talent + " (row.column).");
+            } else {
+                int boxes = graph.find(talent);
+                if (boxes == 0) throw new Exception("Talent " + talent + " not found in tree " + id + ".");
+                if ((boxes & ~masks[t]) == 0) throw new Exception("Talent " + talent + " is owned more often than found in tree " + id + ".");
+                node = Integer.numberOfTrailingZeros(boxes & ~masks[t]);
+            }
+            masks[t] |= 1 << node;
+        }
+        return masks;
+    }
+
+    /**
+     * plan purchase
+     * @param filter trees of character, null for all
+     * @param owned talents owned, see parseOwned
+     * @param targets talents wanted, see parseTargets
+     * @return cheapest plan
+     * @throws Exception
+     */
+    public Plan plan(TreeFilter filter, String owned, String targets) throws Exception {
+        List<TalentTree> selected = select(filter);
+        return plan(selected, parseOwned(selected, owned), parseTargets(targets));
+    }
+
+    /**
+     * plan purchase
+     * @param trees trees of character
+     * @param owned mask of boxes owned per tree
+     * @param targets ranks wanted per talent key, including ranks owned
+     * @return cheapest plan
+     * @throws Exception if talents can not be bought often enough in the trees
+     */
+    public Plan plan(List<TalentTree> trees, int[] owned, Map<String, Integer> targets) throws Exception {
+        if (owned.length != trees.size()) throw new Exception("Owned talents must be given for each tree.");
+        for (int t = 0; t < trees.size(); t++)
+            if (!trees.get(t).getGraph().isValid(owned[t]))
+                throw new Exception("Talents owned in " + trees.get(t).getId() + " are not connected to the first row.");
+
+        // ranks still missing per talent
+        List<String> keys = new ArrayList<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Map.Entry<String, Integer> target : targets.entrySet()) {
+            int have = 0, available = 0;
+            for (int t = 0; t < trees.size(); t++) {
+                TalentGraph graph = trees.get(t).getGraph();
+                int boxes = graph.find(target.getKey());
+                have += Integer.bitCount(boxes & owned[t]);
+                available += Integer.bitCount(boxes & (owned[t] | graph.getReachable()));
+            }
+            if (available == 0) throw new Exception("Talent " + target.getKey() + " not found in the trees selected.");
+            if (available < target.getValue())
+                throw new Exception("Talent " + target.getKey() + " can be bought " + available + " times only in the trees selected.");
+            if (have < target.getValue()) {
+                keys.add(target.getKey());
+                missing.add(target.getValue() - have);
+            }
+        }
+
+        // ranks are combined into states: number of ranks of each talent, digits of a mixed radix number
+        int[] need = new int[keys.size()];
+        int[] strides = new int[keys.size()];
+        int states = 1;
+        for (int j = 0; j < need.length; j++) {
+            need[j] = missing.get(j);
+            strides[j] = states;
+            states *= need[j] + 1;
+        }
+
+        // search each tree for every state it can contribute
+        final List<Search> searches = new ArrayList<>();
+        List<List<Search>> searchesPerTree = new ArrayList<>();
+        for (int t = 0; t < trees.size(); t++) {
+            TalentGraph graph = trees.get(t).getGraph();
+            int[] boxes = new int[need.length];
+            int[] limit = new int[need.length];
+            for (int j = 0; j < need.length; j++) {
+                boxes[j] = graph.find(keys.get(j)) & ~owned[t] & graph.getReachable();
+                limit[j] = Math.min(need[j], Integer.bitCount(boxes[j]));
+            }
+            List<Search> treeSearches = new ArrayList<>();
+            for (int state = 1; state < states; state++) {
+                int[] ranks = new int[need.length];
+                boolean possible = true;
+                for (int j = 0; j < need.length; j++) {
+                    ranks[j] = state / strides[j] % (need[j] + 1);
+                    if (ranks[j] > limit[j]) possible = false;
+                }
+                if (!possible) continue;
+                Search search = new Search(graph, owned[t], boxes, ranks);
+                treeSearches.add(search);
+                searches.add(search);
+            }
+            searchesPerTree.add(treeSearches);
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(searches);
+            }
+        });
+
+        // combine trees: cheapest XP per state of ranks, remembering the choice of each tree
+        int[] cost = new int[states];
+        Arrays.fill(cost, Integer.MAX_VALUE);
+        cost[0] = 0;
+        Search[][] choices = new Search[trees.size()][states];
+        int[][] previous = new int[trees.size()][states];
+        for (int t = 0; t < trees.size(); t++) {
+            int[] next = cost.clone();
+            for (int state = 0; state < states; state++) previous[t][state] = state;
+            for (int state = 0; state < states; state++) {
+                if (cost[state] == Integer.MAX_VALUE) continue;
+                for (Search search : searchesPerTree.get(t)) {
+                    int boxes = search.join();
+                    if (boxes < 0) continue;
+                    int combined = 0;
+                    for (int j = 0; j < need.length; j++) {
+                        int ranks = state / strides[j] % (need[j] + 1) + search.ranks[j];
+                        combined += Math.min(ranks, need[j]) * strides[j];
+                    }
+                    int sum = cost[state] + search.graph.getCostOf(boxes);
+                    if (sum < next[combined]) {
+                        next[combined] = sum;
+                        choices[t][combined] = search;
+                        previous[t][combined] = state;
+                    }
+                }
+            }
+            cost = next;
+        }
+        if (cost[states - 1] == Integer.MAX_VALUE) throw new Exception("Talents can not be bought in the trees selected.");
+
+        // boxes to buy per tree
+        int[] buy = new int[trees.size()];
+        for (int t = trees.size() - 1, state = states - 1; t >= 0; t--) {
+            if (choices[t][state] != null) buy[t] = choices[t][state].join();
+            state = previous[t][state];
+        }
+
+        return new Plan(orderSteps(trees, owned, buy), cost[states - 1]);
+    }
+
+    /**
+     * order boxes to buy: cheapest box that can be bought next first
+     */
+    private static List<Step> orderSteps(List<TalentTree> trees, int[] owned, int[] buy) {
+        List<Step> steps = new ArrayList<>();
+        int[] have = owned.clone();
+        while (true) {
+            int bestTree = -1, bestNode = -1, bestCost = Integer.MAX_VALUE;
+            for (int t = 0; t < trees.size(); t++) {
+                TalentGraph graph = trees.get(t).getGraph();
+                for (int n = graph.getUnlockable(have[t]) & buy[t]; n != 0; n &= n - 1) {
+                    int node = Integer.numberOfTrailingZeros(n);
+                    if (graph.getCost(node) < bestCost) {
+                        bestTree = t;
+                        bestNode = node;
+                        bestCost = graph.getCost(node);
+                    }
+                }
+            }
+            if (bestTree < 0) return steps;
+            have[bestTree] |= 1 << bestNode;
+            steps.add(new Step(trees.get(bestTree), bestNode));
+        }
+    }
+
+    /**
+     * Branch-and-bound search for the cheapest boxes to buy in a single tree, so that a number of ranks of each talent
+     * wanted is bought. The result is the mask of boxes to buy, -1 if the ranks can not be bought.
+     */
+    private static final class Search extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final TalentGraph graph;
+        private final int owned;
+        private final int[] boxes;
+        private final int[] ranks;
+
+        private int[] dist;
+        private BitSet seen;
+        private int best;
+        private int bestCost;
+
+        /**
+         * @param graph graph of tree
+         * @param owned mask of boxes owned
+         * @param boxes mask of boxes per talent wanted, not owned
+         * @param ranks ranks to buy per talent wanted
+         */
+        Search(TalentGraph graph, int owned, int[] boxes, int[] ranks) {
+            this.graph = graph;
+            this.owned = owned;
+            this.boxes = boxes;
+            this.ranks = ranks;
+        }
+
+        @Override
+        protected Integer compute() {
+            dist = new int[graph.getNodeCount()];
+            seen = new BitSet();
+            best = greedy();
+            if (best < 0) return -1;
+            bestCost = graph.getCostOf(best & ~owned);
+            search(owned, 0);
+            return best & ~owned;
+        }
+
+        /**
+         * initial bound: add cheapest paths to the nearest box still wanted until all ranks are bought
+         * @return mask of boxes owned afterwards, -1 if ranks can not be bought
+         */
+        private int greedy() {
+            int mask = owned;
+            while (true) {
+                graph.getMinCosts(mask, dist);
+                int target = -1;
+                boolean done = true;
+                for (int j = 0; j < boxes.length; j++) {
+                    if (Integer.bitCount(mask & boxes[j]) >= ranks[j]) continue;
+                    done = false;
+                    for (int n = boxes[j] & ~mask; n != 0; n &= n - 1) {
+                        int node = Integer.numberOfTrailingZeros(n);
+                        if (dist[node] >= 0 && (target < 0 || dist[node] < dist[target])) target = node;
+                    }
+                }
+                if (done) return mask;
+                if (target < 0) return -1;
+                mask |= graph.getCheapestPath(mask, target);
+            }
+        }
+
+        /**
+         * expand mask of boxes owned by each box that can be bought next
+         * @param mask boxes owned
+         * @param cost XP spent on boxes not owned initially
+         */
+        private void search(int mask, int cost) {
+            // lower bound: the nearest box of each talent has to be reached, the cheapest boxes missing bought
+            graph.getMinCosts(mask, dist);
+            int nearest = 0, cheapest = 0;
+            boolean done = true;
+            for (int j = 0; j < boxes.length; j++) {
+                int missing = ranks[j] - Integer.bitCount(mask & boxes[j]);
+                if (missing <= 0) continue;
+                done = false;
+                int reach = Integer.MAX_VALUE, free = 0;
+                for (int n = boxes[j] & ~mask; n != 0; n &= n - 1) {
+                    int node = Integer.numberOfTrailingZeros(n);
+                    if (dist[node] < 0) continue;
+                    reach = Math.min(reach, dist[node]);
+                    free |= 1 << node;
+                }
+                if (Integer.bitCount(free) < missing) return;
+                nearest = Math.max(nearest, reach);
+                for (; missing > 0; missing--) {
+                    int cheapestNode = -1;
+                    for (int n = free; n != 0; n &= n - 1) {
+                        int node = Integer.numberOfTrailingZeros(n);
+                        if (cheapestNode < 0 || graph.getCost(node) < graph.getCost(cheapestNode)) cheapestNode = node;
+                    }
+                    cheapest += graph.getCost(cheapestNode);
+                    free &= ~(1 << cheapestNode);
+                }
+            }
+            if (done) {
+                if (cost < bestCost) {
+                    best = mask;
+                    bestCost = cost;
+                }
+                return;
+            }
+            if (cost + Math.max(nearest, cheapest) >= bestCost) return;
+
+            for (int n = graph.getUnlockable(mask); n != 0; n &= n - 1) {
+                int node = Integer.numberOfTrailingZeros(n);
+                int next = mask | 1 << node;
+                if (seen.get(next)) continue;
+                seen.set(next);
+                search(next, cost + graph.getCost(node));
+            }
+        }
+    }
+
+    /**
+     * Single talent to buy
+     */
+    public static final class Step {
+        private final TalentTree tree;
+        private final int node;
+
+        Step(TalentTree tree, int node) {
+            this.tree = tree;
+            this.node = node;
+        }
+
+        public TalentTree getTree() {
+            return tree;
+        }
+
+        /**
+         * @return number of box in tree
+         */
+        public int getNode() {
+            return node;
+        }
+
+        public TalentCell getCell() {
+            return tree.getCell(node);
+        }
+
+        /**
+         * @return XP cost
+         */
+        public int getCost() {
+            return tree.getGraph().getCost(node);
+        }
+    }
+
+    /**
+     * Talents to buy in order. Immutable.
+     */
+    public static final class Plan {
+        private final List<Step> steps;
+        private final int cost;
+
+        Plan(List<Step> steps, int cost) {
+            this.steps = Collections.unmodifiableList(steps);
+            this.cost = cost;
+        }
+
+        /**
+         * @return talents to buy in order, unmodifiable
+         */
+        public List<Step> getSteps() {
+            return steps;
+        }
+
+        /**
+         * @return XP cost of all talents
+         */
+        public int getCost() {
+            return cost;
+        }
+
+        /**
+         * print plan with localized names
+         * @param out stream to print to
+         * @param catalog strings
+         */
+        public void print(PrintStream out, StringCatalog catalog) {
+            int i = 1;
+            for (Step step : steps) {
+                TalentCell cell = step.getCell();
+                out.println(i++ + ". " + getTitle(catalog, cell.getKey()) + " (" + getName(catalog, step.getTree())
+                        + ", row " + (cell.getRow() + 1) + ", column " + (cell.getCol() + 1) + "): " + step.getCost() + " XP");
+            }
+            out.println("Total: " + cost + " XP");
+        }
+
+        /**
+         * @return localized title of talent (on a single line) or key
+         */
+        private static String getTitle(StringCatalog catalog, String key) {
+            try {
+                return catalog.getHeaderProperties(key).title.replaceAll("\\s+", " ");
+            } catch (Exception e) {
+                return key;
+            }
+        }
+
+        /**
+         * @return localized name of tree or id
+         */
+        private static String getName(StringCatalog catalog, TalentTree tree) {
+            String name = tree.getSubheader() == null ? null : catalog.getStrings().get(tree.getSubheader());
+            return name == null ? tree.getId() : name;
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package de.beimax.talenttree;
+
+import java.util.*;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Compiled and validated talent tree - one document of the data file. Immutable, so it can be shared by generators
+ * running concurrently.
+ *
+ * Talent paths are stored as bit masks, one per path row: even rows connect boxes horizontally (bit n: path from
+ * column n to n+1), odd rows connect boxes vertically (bit n: path down from column n).
+ */
+public final class TalentTree {
+    /**
+     * number of talent rows and columns of a tree
+     */
+    public static final int ROWS = 5;
+    public static final int COLS = 4;
+
+    private final String id;
+    private final String type;
+    private final String header;
+    private final String subheader;
+    private final String group;
+    private final String sortKeyPrepend;
+    private final String descriptiveText;
+    private final String[] skills;
+    private final String[] bonusSkills;
+
+    /**
+     * talent boxes in row order
+     */
+    private final TalentCell[] cells;
+
+    /**
+     * path bit masks
+     */
+    private final int[] paths;
+
+    /**
+     * number of entries of each path row in data
+     */
+    private final int[] pathSizes;
+
+    /**
+     * signature node bit mask, -1 if tree has no signature nodes
+     */
+    private final int signatureNodes;
+
+    /**
+     * graph of boxes and paths, compiled when tree is built
+     */
+    private final TalentGraph graph;
+
+    private TalentTree(Builder builder) {
+        id = builder.id;
+        type = builder.type;
+        header = builder.header;
+        subheader = builder.subheader;
+        group = builder.group;
+        sortKeyPrepend = builder.sortKeyPrepend;
+        descriptiveText = builder.descriptiveText;
+        skills = builder.skills;
+        bonusSkills = builder.bonusSkills;
+        cells = builder.cells.toArray(new TalentCell[builder.cells.size()]);
+        paths = Arrays.copyOf(builder.paths, builder.pathRows);
+        pathSizes = Arrays.copyOf(builder.pathSizes, builder.pathRows);
+        signatureNodes = builder.signatureNodes;
+        graph = TalentGraph.compile(this);
+    }
+
+    /**
+     * compile tree from parsed YAML document
+     * @param data parsed document
+     * @return compiled tree
+     * @throws Exception if document is not valid
+     */
+    public static TalentTree fromMap(Map<?, ?> data) throws Exception {
+        Builder builder = new Builder();
+        try {
+            for (Map.Entry<?, ?> entry : data.entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                Object value = entry.getValue();
+                if (value == null) continue;
+
+                switch (key) {
+                    case "skills":
+                    case "bonus_skills":
+                        builder.setStrings(key, toStrings(value, key));
+                        break;
+                    case "talents":
+                        if (!(value instanceof List)) throw new Exception("Key talents must be a list of rows.");
+                        for (Object row : (List<?>) value) {
+                            if (!(row instanceof List)) throw new Exception("Talent row " + (builder.talentRows + 1) + " must be a list.");
+                            builder.addTalentRow(toStrings(row, "talent row " + (builder.talentRows + 1)));
+                        }
+                        break;
+                    case "talent_paths":
+                        if (!(value instanceof List)) throw new Exception("Key talent_paths must be a list of rows.");
+                        for (Object row : (List<?>) value) builder.addPathRow(toFlags(row, "Path row " + (builder.pathRows + 1)));
+                        break;
+                    case "signature_nodes":
+                        builder.setSignatureNodes(toFlags(value, "Signature nodes"));
+                        break;
+                    default:
+                        if (!(value instanceof String)) throw new Exception("Key " + key + " must be a string.");
+                        builder.set(key, (String) value);
+                }
+            }
+            return builder.build();
+        } catch (Exception e) {
+            throw new Exception("Error in data" + (builder.id == null ? "" : " of " + builder.id) + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * convert parsed list to strings
+     */
+    private static List<String> toStrings(Object o, String name) throws Exception {
+        if (!(o instanceof List)) throw new Exception("Key " + name + " must be a list.");
+        List<?> list = (List<?>) o;
+        List<String> strings = new ArrayList<>(list.size());
+        for (Object s : list) {
+            if (!(s instanceof String)) throw new Exception("Entry " + s + " of " + name + " must be a string.");
+            strings.add((String) s);
+        }
+        return strings;
+    }
+
+    /**
+     * convert parsed list of 0/1 flags
+     */
+    private static List<Integer> toFlags(Object o, String name) throws Exception {
+        if (!(o instanceof List)) throw new Exception(name + " must be a list.");
+        List<?> list = (List<?>) o;
+        List<Integer> flags = new ArrayList<>(list.size());
+        for (Object flag : list) {
+            if (!(flag instanceof Integer)) throw new Exception(name + " must contain numbers only.");
+            flags.add((Integer) flag);
+        }
+        return flags;
+    }
+
+    /**
+     * Collects and validates the parts of a tree - used by loaders
+     */
+    public static final class Builder {
+        private String id;
+        private String type;
+        private String header;
+        private String subheader;
+        private String group;
+        private String sortKeyPrepend;
+        private String descriptiveText;
+        private String[] skills;
+        private String[] bonusSkills;
+        private final List<TalentCell> cells = new ArrayList<>();
+        private int talentRows = 0;
+        private int[] paths = new int[2 * ROWS - 1];
+        private int[] pathSizes = new int[2 * ROWS - 1];
+        private int pathRows = 0;
+        private boolean hasTalents = false;
+        private boolean hasPaths = false;
+        private int signatureNodes = -1;
+
+        /**
+         * @param key data key
+         * @return true if key has a string value
+         */
+        public static boolean isStringKey(String key) {
+            switch (key) {
+                case "id":
+                case "type":
+                case "header":
+                case "subheader":
+                case "group":
+                case "sortKeyPrepend":
+                case "descriptiveText":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * @return id set so far or null
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * set string value
+         * @param key data key
+         * @param value value
+         * @return builder
+         * @throws Exception if key is unknown or no string key
+         */
+        public Builder set(String key, String value) throws Exception {
+            value = value.intern();
+            switch (key) {
+                case "id": id = value; break;
+                case "type": type = value; break;
+                case "header": header = value; break;
+                case "subheader": subheader = value; break;
+                case "group": group = value; break;
+                case "sortKeyPrepend": sortKeyPrepend = value; break;
+                case "descriptiveText": descriptiveText = value; break;
+                case "skills":
+                case "bonus_skills":
+                case "talents":
+                case "talent_paths":
+                case "signature_nodes":
+                    throw new Exception("Key " + key + " must be a list.");
+                default:
+                    throw new Exception("Unknown key " + key + ".");
+            }
+            return this;
+        }
+
+        /**
+         * set skill list
+         * @param key skills or bonus_skills
+         * @param values skill keys
+         * @return builder
+         * @throws Exception
+         */
+        public Builder setStrings(String key, List<String> values) throws Exception {
+            String[] strings = new String[values.size()];
+            for (int i = 0; i < strings.length; i++) strings[i] = values.get(i).intern();
+            if (key.equals("skills")) skills = strings;
+            else if (key.equals("bonus_skills")) bonusSkills = strings;
+            else throw new Exception("Unknown list key " + key + ".");
+            return this;
+        }
+
+        /**
+         * add row of talent boxes
+         * @param specs cell specs
+         * @return builder
+         * @throws Exception if a spec is malformed
+         */
+        public Builder addTalentRow(List<String> specs) throws Exception {
+            if (talentRows >= ROWS) throw new Exception("Trees have " + ROWS + " talent rows at most.");
+            int col = 0;
+            for (String spec : specs) {
+                TalentCell cell = TalentCell.parse(spec, talentRows, col);
+                cells.add(cell);
+                col += cell.getSpan();
+            }
+            talentRows++;
+            hasTalents = true;
+            return this;
+        }
+
+        /**
+         * add row of paths
+         * @param flags 0/1 flags per column
+         * @return builder
+         * @throws Exception
+         */
+        public Builder addPathRow(List<Integer> flags) throws Exception {
+            return addPathMask(toMask(flags, "Path row " + (pathRows + 1)), flags.size());
+        }
+
+        /**
+         * add row of paths
+         * @param mask bit mask of paths
+         * @param size number of entries of row in data
+         * @return builder
+         * @throws Exception
+         */
+        public Builder addPathMask(int mask, int size) throws Exception {
+            if (mask < 0 || mask >= 1 << COLS || size < 0 || size > COLS)
+                throw new Exception("Path row " + (pathRows + 1) + " is not valid.");
+            if (pathRows == paths.length) {
+                paths = Arrays.copyOf(paths, pathRows * 2);
+                pathSizes = Arrays.copyOf(pathSizes, pathRows * 2);
+            }
+            pathSizes[pathRows] = size;
+            paths[pathRows++] = mask;
+            hasPaths = true;
+            return this;
+        }
+
+        /**
+         * set signature nodes
+         * @param mask bit mask of nodes, -1 for none
+         * @return builder
+         * @throws Exception
+         */
+        public Builder setSignatureMask(int mask) throws Exception {
+            if (mask < -1 || mask >= 1 << COLS) throw new Exception("Signature nodes are not valid.");
+            signatureNodes = mask;
+            return this;
+        }
+
+        /**
+         * set signature nodes
+         * @param flags 0/1 flags per column
+         * @return builder
+         * @throws Exception
+         */
+        public Builder setSignatureNodes(List<Integer> flags) throws Exception {
+            signatureNodes = toMask(flags, "Signature nodes");
+            return this;
+        }
+
+        /**
+         * @return validated tree
+         * @throws Exception if required data is missing
+         */
+        public TalentTree build() throws Exception {
+            if (id == null) throw new Exception("Key id is empty.");
+            if (type == null) throw new Exception("Key type is empty.");
+            if (!hasTalents) throw new Exception("Key talents is empty.");
+            if (!hasPaths) throw new Exception("Key talent_paths is empty.");
+            return new TalentTree(this);
+        }
+
+        /**
+         * convert list of 0/1 flags to bit mask
+         */
+        private static int toMask(List<Integer> flags, String name) throws Exception {
+            if (flags.size() > COLS) throw new Exception(name + " has more than " + COLS + " entries.");
+            int mask = 0, i = 0;
+            for (Integer flag : flags) {
+                if (flag == 1) mask |= 1 << i;
+                i++;
+            }
+            return mask;
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return class name of page generator
+     */
+    public String getType() {
+        return type;
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    public String getSubheader() {
+        return subheader;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public String getSortKeyPrepend() {
+        return sortKeyPrepend;
+    }
+
+    public String getDescriptiveText() {
+        return descriptiveText;
+    }
+
+    /**
+     * @return career skill keys or null
+     */
+    public List<String> getSkills() {
+        return skills == null ? null : Collections.unmodifiableList(Arrays.asList(skills));
+    }
+
+    /**
+     * @return bonus skill keys or null
+     */
+    public List<String> getBonusSkills() {
+        return bonusSkills == null ? null : Collections.unmodifiableList(Arrays.asList(bonusSkills));
+    }
+
+    /**
+     * @return number of talent boxes
+     */
+    public int getCellCount() {
+        return cells.length;
+    }
+
+    /**
+     * @param i number of box in row order
+     * @return talent box
+     */
+    public TalentCell getCell(int i) {
+        return cells[i];
+    }
+
+    /**
+     * @return number of path rows
+     */
+    public int getPathRowCount() {
+        return paths.length;
+    }
+
+    /**
+     * @param row path row
+     * @return bit mask of paths in row
+     */
+    public int getPaths(int row) {
+        return paths[row];
+    }
+
+    /**
+     * @param row path row
+     * @return number of entries of path row in data
+     */
+    public int getPathSize(int row) {
+        return pathSizes[row];
+    }
+
+    /**
+     * @param row path row
+     * @param col column
+     * @return true if path exists
+     */
+    public boolean hasPath(int row, int col) {
+        return (paths[row] & (1 << col)) != 0;
+    }
+
+    /**
+     * @return signature node bit mask, -1 if tree has no signature nodes
+     */
+    public int getSignatureNodes() {
+        return signatureNodes;
+    }
+
+    /**
+     * @return true if tree has signature nodes
+     */
+    public boolean hasSignatureNodes() {
+        return signatureNodes >= 0;
+    }
+
+    /**
+     * @param col column
+     * @return true if signature node exists above column
+     */
+    public boolean hasSignatureNode(int col) {
+        return signatureNodes >= 0 && (signatureNodes & (1 << col)) != 0;
+    }
+
+    /**
+     * @return graph of boxes and paths for reachability and cost queries
+     */
+    public TalentGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return unambiguous representation of all data, e.g. for cache keys
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("TalentTree{");
+        append(sb, "id", id);
+        append(sb, "type", type);
+        append(sb, "header", header);
+        append(sb, "subheader", subheader);
+        append(sb, "group", group);
+        append(sb, "sortKeyPrepend", sortKeyPrepend);
+        append(sb, "descriptiveText", descriptiveText);
+        append(sb, "skills", skills == null ? null : Arrays.toString(skills));
+        append(sb, "bonus_skills", bonusSkills == null ? null : Arrays.toString(bonusSkills));
+        StringBuilder talents = new StringBuilder();
+        for (TalentCell cell : cells) talents.append(cell.getRow()).append(':').append(cell.getCol()).append(':').append(cell).append(',');
+        append(sb, "talents", talents.toString());
+        append(sb, "talent_paths", Arrays.toString(paths));
+        append(sb, "talent_path_sizes", Arrays.toString(pathSizes));
+        append(sb, "signature_nodes", String.valueOf(signatureNodes));
+        return sb.append('}').toString();
+    }
+
+    /**
+     * append length prefixed value
+     */
+    private static void append(StringBuilder sb, String key, String value) {
+        sb.append(key).append('=');
+        if (value == null) sb.append('~');
+        else sb.append(value.length()).append(':').append(value);
+        sb.append(';');
+    }
+}
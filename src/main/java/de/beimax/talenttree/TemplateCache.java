@@ -0,0 +1,74 @@
+package de.beimax.talenttree;
+
+import com.itextpdf.text.pdf.PdfTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Cache of reusable XObject templates (talent boxes, legends, footers). Templates belong to a single writer, so
+ * there is one cache per PdfWriter. Not thread safe.
+ */
+public class TemplateCache {
+    /**
+     * templates by key
+     */
+    private final Map<String, PdfTemplate> templates = new HashMap<>();
+
+    /**
+     * number of cache hits
+     */
+    private int hits = 0;
+
+    /**
+     * Get template from cache
+     * @param key template key
+     * @return template or null if template has not been created yet
+     */
+    public PdfTemplate get(String key) {
+        PdfTemplate template = templates.get(key);
+        if (template != null) hits++;
+        return template;
+    }
+
+    /**
+     * Add template to cache
+     * @param key template key
+     * @param template template
+     */
+    public void put(String key, PdfTemplate template) {
+        templates.put(key, template);
+    }
+
+    /**
+     * @return number of templates in cache
+     */
+    public int size() {
+        return templates.size();
+    }
+
+    /**
+     * @return number of cache hits
+     */
+    public int getHits() {
+        return hits;
+    }
+}
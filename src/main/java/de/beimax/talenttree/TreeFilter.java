@@ -0,0 +1,96 @@
+package de.beimax.talenttree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Selection of talent trees by id. Ids may contain the wildcards * and ?. Immutable.
+ */
+public class TreeFilter {
+    /**
+     * compiled patterns
+     */
+    private final List<Pattern> patterns = new ArrayList<>();
+
+    /**
+     * Constructor
+     * @param ids ids or globs to select
+     */
+    public TreeFilter(Collection<String> ids) {
+        for (String id : ids) {
+            id = id.trim();
+            if (id.length() > 0) patterns.add(compileGlob(id));
+        }
+    }
+
+    /**
+     * Create filter from comma separated list
+     * @param ids comma separated ids or globs
+     * @return filter
+     */
+    public static TreeFilter parse(String ids) {
+        List<String> list = new ArrayList<>();
+        for (String id : ids.split(",")) list.add(id);
+        return new TreeFilter(list);
+    }
+
+    /**
+     * Check id
+     * @param id tree id
+     * @return true if tree is selected
+     */
+    public boolean matches(String id) {
+        if (id == null) return false;
+        for (Pattern pattern : patterns)
+            if (pattern.matcher(id).matches()) return true;
+        return false;
+    }
+
+    /**
+     * @param id id to check
+     * @return true if id contains wildcards
+     */
+    public static boolean isGlob(String id) {
+        return id.indexOf('*') >= 0 || id.indexOf('?') >= 0;
+    }
+
+    /**
+     * convert glob to regular expression
+     * @param glob glob
+     * @return pattern
+     */
+    private static Pattern compileGlob(String glob) {
+        StringBuilder sb = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start) sb.append(Pattern.quote(glob.substring(start, i)));
+                sb.append(c == '*' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < glob.length()) sb.append(Pattern.quote(glob.substring(start)));
+        return Pattern.compile(sb.toString());
+    }
+}
@@ -0,0 +1,321 @@
+package de.beimax.talenttree;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Loads talent trees from YAML data using SnakeYAML's event API: documents are read straight into tree builders, no
+ * intermediate maps and lists are created. Documents of trees not selected by a filter are skipped without building.
+ */
+public class TreeLoader {
+    /**
+     * selected trees, null for all
+     */
+    private final TreeFilter filter;
+
+    /**
+     * number of documents skipped by filter
+     */
+    private int skipped = 0;
+
+    /**
+     * Constructor
+     * @param filter selected trees or null for all
+     */
+    public TreeLoader(TreeFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * read data file or default data of JAR - files are memory mapped
+     * @param dataFile data file name or null for default data
+     * @return content of data file
+     * @throws Exception
+     */
+    public static ByteBuffer readDataFile(String dataFile) throws Exception {
+        if (dataFile == null) {
+            try (InputStream in = TreeLoader.class.getResourceAsStream("/data.yaml")) {
+                if (in == null) throw new Exception("Default data file not found.");
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = in.read(chunk)) > 0) out.write(chunk, 0, read);
+                return ByteBuffer.wrap(out.toByteArray());
+            }
+        }
+
+        File file = new File(dataFile);
+        if (!file.exists()) throw new Exception("Data file " + dataFile + " not found.");
+        if (file.length() > Integer.MAX_VALUE) throw new Exception("Data file " + dataFile + " is too large.");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * load trees from data
+     * @param buffer content of data file
+     * @return trees in order of data file
+     * @throws Exception
+     */
+    public List<TalentTree> load(ByteBuffer buffer) throws Exception {
+        return load(new UnicodeReader(new ByteBufferInputStream(buffer.duplicate())));
+    }
+
+    /**
+     * load trees from data
+     * @param reader data reader
+     * @return trees in order of data file
+     * @throws Exception
+     */
+    public List<TalentTree> load(Reader reader) throws Exception {
+        List<TalentTree> trees = new ArrayList<>();
+        Iterator<Event> events = new Yaml().parse(reader).iterator();
+        try {
+            while (events.hasNext()) {
+                Event event = events.next();
+                if (event.is(Event.ID.DocumentStart)) {
+                    TalentTree tree = readDocument(events);
+                    if (tree != null) trees.add(tree);
+                }
+            }
+        } catch (Exception e) {
+            throw new Exception("Error loading data file:" + e.getMessage());
+        }
+        return trees;
+    }
+
+    /**
+     * read id of a single document - parsing stops as soon as the id key has been read
+     * @param document content of document
+     * @return id or null, if document is empty or has no id
+     * @throws Exception
+     */
+    public static String readId(ByteBuffer document) throws Exception {
+        Iterator<Event> events = new Yaml().parse(new UnicodeReader(new ByteBufferInputStream(document.duplicate()))).iterator();
+        try {
+            while (events.hasNext()) {
+                if (!events.next().is(Event.ID.DocumentStart)) continue;
+                Event event = next(events);
+                if (!event.is(Event.ID.MappingStart)) return null;
+                while (!(event = next(events)).is(Event.ID.MappingEnd)) {
+                    String key = scalar(event, "key");
+                    if (key.equals("id")) return scalar(next(events), key);
+                    skipNode(events);
+                }
+                return null;
+            }
+        } catch (Exception e) {
+            throw new Exception("Error indexing data file:" + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @return number of documents skipped by filter
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * read single document
+     * @param events event stream positioned after document start
+     * @return tree or null, if document is empty or not selected
+     * @throws Exception
+     */
+    protected TalentTree readDocument(Iterator<Event> events) throws Exception {
+        Event event = next(events);
+        if (event.is(Event.ID.Scalar) && ((ScalarEvent) event).getValue().isEmpty()) return null; // empty document
+        if (!event.is(Event.ID.MappingStart))
+            throw new Exception("Document at line " + (event.getStartMark().getLine() + 1) + " is not a map.");
+
+        TalentTree.Builder builder = new TalentTree.Builder();
+        boolean skip = false;
+        try {
+            while (true) {
+                event = next(events);
+                if (event.is(Event.ID.MappingEnd)) break;
+                String key = scalar(event, "key");
+
+                // skip rest of document, if not selected
+                if (skip) {
+                    skipNode(events);
+                    continue;
+                }
+
+                switch (key) {
+                    case "skills":
+                    case "bonus_skills":
+                        builder.setStrings(key, readStrings(events, key));
+                        break;
+                    case "talents":
+                        expect(next(events), Event.ID.SequenceStart, "talents");
+                        while (!(event = next(events)).is(Event.ID.SequenceEnd)) {
+                            expect(event, Event.ID.SequenceStart, "talent row");
+                            builder.addTalentRow(readRest(events, "talent row"));
+                        }
+                        break;
+                    case "talent_paths":
+                        expect(next(events), Event.ID.SequenceStart, "talent_paths");
+                        while (!(event = next(events)).is(Event.ID.SequenceEnd)) {
+                            expect(event, Event.ID.SequenceStart, "path row");
+                            builder.addPathRow(toFlags(readRest(events, "path row"), "path row"));
+                        }
+                        break;
+                    case "signature_nodes":
+                        builder.setSignatureNodes(toFlags(readStrings(events, key), key));
+                        break;
+                    default:
+                        if (!TalentTree.Builder.isStringKey(key)) throw new Exception("Unknown key " + key + ".");
+                        builder.set(key, scalar(next(events), key));
+                        if (key.equals("id") && filter != null && !filter.matches(builder.getId())) skip = true;
+                }
+            }
+        } catch (Exception e) {
+            throw new Exception("Error in data" + (builder.getId() == null ? "" : " of " + builder.getId())
+                    + " (line " + (event.getStartMark().getLine() + 1) + "): " + e.getMessage());
+        }
+
+        if (skip) {
+            skipped++;
+            return null;
+        }
+        try {
+            return builder.build();
+        } catch (Exception e) {
+            throw new Exception("Error in data" + (builder.getId() == null ? "" : " of " + builder.getId()) + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * get next event
+     */
+    private static Event next(Iterator<Event> events) throws Exception {
+        if (!events.hasNext()) throw new Exception("Unexpected end of data.");
+        Event event = events.next();
+        if (event.is(Event.ID.Alias)) throw new Exception("Aliases are not supported.");
+        return event;
+    }
+
+    /**
+     * check event type
+     */
+    private static void expect(Event event, Event.ID id, String name) throws Exception {
+        if (!event.is(id)) throw new Exception("Key " + name + " must be a " + (id == Event.ID.SequenceStart ? "list." : "string."));
+    }
+
+    /**
+     * get value of scalar event
+     */
+    private static String scalar(Event event, String name) throws Exception {
+        expect(event, Event.ID.Scalar, name);
+        return ((ScalarEvent) event).getValue();
+    }
+
+    /**
+     * read list of scalars
+     */
+    private static List<String> readStrings(Iterator<Event> events, String name) throws Exception {
+        expect(next(events), Event.ID.SequenceStart, name);
+        return readRest(events, name);
+    }
+
+    /**
+     * read scalars of list until its end
+     */
+    private static List<String> readRest(Iterator<Event> events, String name) throws Exception {
+        List<String> values = new ArrayList<>();
+        Event event;
+        while (!(event = next(events)).is(Event.ID.SequenceEnd)) {
+            if (!event.is(Event.ID.Scalar)) throw new Exception("Entries of " + name + " must be strings.");
+            values.add(((ScalarEvent) event).getValue());
+        }
+        return values;
+    }
+
+    /**
+     * convert scalars to 0/1 flags
+     */
+    private static List<Integer> toFlags(List<String> values, String name) throws Exception {
+        List<Integer> flags = new ArrayList<>(values.size());
+        for (String value : values) {
+            try {
+                flags.add(Integer.valueOf(value));
+            } catch (NumberFormatException e) {
+                throw new Exception("Entries of " + name + " must be numbers.");
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * skip value node including nested nodes
+     */
+    private static void skipNode(Iterator<Event> events) throws Exception {
+        int depth = 0;
+        do {
+            Event event = next(events);
+            if (event.is(Event.ID.SequenceStart) || event.is(Event.ID.MappingStart)) depth++;
+            else if (event.is(Event.ID.SequenceEnd) || event.is(Event.ID.MappingEnd)) depth--;
+        } while (depth > 0);
+    }
+
+    /**
+     * Input stream reading a byte buffer, e.g. a memory mapped file
+     */
+    protected static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
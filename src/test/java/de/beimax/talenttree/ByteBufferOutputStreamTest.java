@@ -0,0 +1,62 @@
+package de.beimax.talenttree;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Checks that content survives growing the buffer and that views handed out stay valid.
+ */
+public class ByteBufferOutputStreamTest {
+    @Test
+    public void keepsContentWhenGrowing() {
+        ByteBufferOutputStream out = new ByteBufferOutputStream(4);
+        for (int i = 0; i < 1000; i++) out.write(i);
+        out.write(new byte[5000], 0, 5000);
+
+        ByteBuffer result = out.toByteBuffer();
+        assertEquals(6000, result.remaining());
+        for (int i = 0; i < 1000; i++) assertEquals((byte) i, result.get(i));
+        assertEquals(0, result.get(5999));
+    }
+
+    @Test
+    public void viewSurvivesGrowingAndReset() {
+        ByteBufferOutputStream out = new ByteBufferOutputStream(4);
+        out.write(new byte[] {1, 2, 3, 4}, 0, 4);
+        ByteBuffer view = out.toByteBuffer();
+
+        // grows into a new buffer, then overwrites it after reset
+        out.write(new byte[100], 0, 100);
+        out.reset();
+        out.write(new byte[] {9, 9, 9, 9}, 0, 4);
+        ByteBuffer second = out.toByteBuffer();
+        out.reset();
+        out.write(new byte[] {7, 7, 7, 7}, 0, 4);
+
+        assertEquals(4, view.remaining());
+        for (int i = 0; i < 4; i++) assertEquals(i + 1, view.get(i));
+        for (int i = 0; i < 4; i++) assertEquals(9, second.get(i));
+        assertEquals(7, out.toByteBuffer().get(0));
+    }
+}
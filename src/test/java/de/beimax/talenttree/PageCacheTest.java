@@ -0,0 +1,86 @@
+package de.beimax.talenttree;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Checks that outdated entries are removed from the page cache when it is opened.
+ */
+public class PageCacheTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private static final Map<String, String> STRINGS = Collections.singletonMap("Title", "Explorer");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void removesEntriesNotUsed() throws Exception {
+        File dir = folder.getRoot();
+        PageCache cache = new PageCache(dir);
+        cache.put("old", Collections.singletonList("Title"), STRINGS, new byte[100]);
+        cache.put("used", Collections.singletonList("Title"), STRINGS, new byte[100]);
+        age(dir, 2 * DAY);
+
+        // reading an entry marks it as used
+        assertNotNull(cache.get("used", STRINGS));
+
+        cache = new PageCache(dir, PageCache.MAX_SIZE, DAY);
+        assertEquals(2, cache.getRemoved());
+        assertNull(cache.get("old", STRINGS));
+        assertNotNull(cache.get("used", STRINGS));
+        assertEquals(2, dir.listFiles().length);
+    }
+
+    @Test
+    public void keepsRecentlyUsedWithinSize() throws Exception {
+        File dir = folder.getRoot();
+        PageCache cache = new PageCache(dir);
+        cache.put("first", Collections.singletonList("Title"), STRINGS, new byte[1000]);
+        age(dir, DAY);
+        cache.put("second", Collections.singletonList("Title"), STRINGS, new byte[1000]);
+
+        cache = new PageCache(dir, 1500, PageCache.MAX_AGE);
+        assertTrue(cache.getRemoved() > 0);
+        assertNull(cache.get("first", STRINGS));
+        assertNotNull(cache.get("second", STRINGS));
+
+        long size = 0;
+        for (File file : dir.listFiles()) size += file.length();
+        assertTrue(size <= 1500);
+    }
+
+    /**
+     * move modification times of all files in directory back
+     * @param dir directory
+     * @param millis time to move back
+     */
+    private void age(File dir, long millis) {
+        for (File file : dir.listFiles()) assertTrue(file.setLastModified(file.lastModified() - millis));
+    }
+}
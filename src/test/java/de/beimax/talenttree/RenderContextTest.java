@@ -0,0 +1,55 @@
+package de.beimax.talenttree;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Checks that shared contexts cannot be changed through their getters.
+ */
+public class RenderContextTest {
+    @Test(expected = UnsupportedOperationException.class)
+    public void stringsAreUnmodifiable() throws Exception {
+        RenderContext context = new RenderContext.Builder().language("en").build();
+        context.getCatalog().getStrings().put("FileName", "other");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void treesAreUnmodifiable() throws Exception {
+        RenderContext context = new RenderContext.Builder().language("en").build();
+        context.getTrees().clear();
+    }
+
+    @Test
+    public void catalogCopiesStrings() {
+        Properties strings = new Properties();
+        strings.setProperty("FileName", "talents");
+        StringCatalog catalog = new StringCatalog(strings, Locale.ENGLISH);
+        strings.setProperty("FileName", "other");
+        strings.setProperty("PDFTitle", "title");
+
+        assertEquals("talents", catalog.getStrings().get("FileName"));
+        assertNull(catalog.getStrings().get("PDFTitle"));
+    }
+}
@@ -0,0 +1,154 @@
+package de.beimax.talenttree;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.args4j.CmdLineParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Starts the render service on a free local port and checks rendering, statistics, rejection and timeouts.
+ */
+public class RenderServerTest {
+    private RenderServer server;
+
+    /**
+     * released to let blocking tasks finish
+     */
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() throws Exception {
+        PDFGenerator settings = new PDFGenerator();
+        new CmdLineParser(settings).parseArgument("--serve", "0", "--threads", "2", "--queue", "1", "--timeout", "1");
+        server = new RenderServer(settings);
+        server.start();
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        server.stop();
+    }
+
+    @Test
+    public void rendersPdf() throws Exception {
+        HttpURLConnection connection = open("/render?lang=en&trees=ExplorerFringer");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("application/pdf", connection.getContentType());
+        String pdf = new String(read(connection.getInputStream()), "ISO-8859-1");
+        assertTrue(pdf.startsWith("%PDF-"));
+        assertTrue(pdf.trim().endsWith("%%EOF"));
+    }
+
+    @Test
+    public void rejectsUnknownParameter() throws Exception {
+        assertEquals(400, open("/render?output=/tmp/x.pdf").getResponseCode());
+    }
+
+    @Test
+    public void rejectsWhenBusy() throws Exception {
+        // two workers and one queue slot taken
+        for (int i = 0; i < 3; i++) block();
+
+        HttpURLConnection connection = open("/render?lang=en&trees=ExplorerFringer");
+        assertEquals(503, connection.getResponseCode());
+        assertEquals("1", connection.getHeaderField("Retry-After"));
+        assertTrue(stats().contains("\"rejected\":1,"));
+    }
+
+    @Test
+    public void timesOutWhenWaiting() throws Exception {
+        // both workers taken, the request waits in the queue longer than the timeout
+        for (int i = 0; i < 2; i++) block();
+
+        long start = System.nanoTime();
+        assertEquals(504, open("/render?lang=en&trees=ExplorerFringer").getResponseCode());
+        assertTrue(System.nanoTime() - start >= TimeUnit.SECONDS.toNanos(1));
+        assertTrue(stats().contains("\"timeouts\":1,"));
+    }
+
+    @Test
+    public void countsRequests() throws Exception {
+        assertEquals(200, open("/render?lang=en&trees=ExplorerFringer").getResponseCode());
+        assertEquals(400, open("/render?foo=bar").getResponseCode());
+
+        String json = stats();
+        assertTrue(json, json.startsWith("{\"requests\":2,\"rejected\":0,\"timeouts\":0,\"errors\":0,\"workers\":2,"));
+        assertTrue(json, json.contains("\"latency\":{"));
+    }
+
+    @Test
+    public void sharesCatalogOfUnknownLanguages() throws Exception {
+        assertEquals(200, open("/render?lang=en&trees=ExplorerFringer").getResponseCode());
+        int catalogs = server.getFactory().getCatalogCount();
+
+        // unknown languages fall back to English and must not load it again
+        for (String lang : new String[] {"xx", "yy", "zz"})
+            assertEquals(200, open("/render?lang=" + lang + "&trees=ExplorerFringer").getResponseCode());
+        assertEquals(catalogs, server.getFactory().getCatalogCount());
+    }
+
+    /**
+     * occupy a worker or queue slot until the test ends
+     */
+    private void block() {
+        server.getWorkers().submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                release.await();
+                return null;
+            }
+        });
+    }
+
+    private String stats() throws IOException {
+        HttpURLConnection connection = open("/stats");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("application/json"));
+        return new String(read(connection.getInputStream()), "UTF-8");
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+        connection.setReadTimeout(30000);
+        return connection;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read; (read = in.read(buffer)) > 0; ) out.write(buffer, 0, read);
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,137 @@
+package de.beimax.talenttree;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Renders from many threads at once through a single Renderer and compares each PDF to the one rendered sequentially.
+ * Values iText creates per document (document id, dates and tags of font subsets) are masked - they have the same
+ * length, so all other bytes have to be identical.
+ */
+public class RendererTest {
+    private static final String[] FILTERS = {null, "Explorer*", "ForcePower*", "Signature*", "Colonist*,HiredGun*",
+            "BountyHunterAssassin"};
+
+    private static Renderer renderer;
+
+    /**
+     * normalized PDFs rendered sequentially by filter
+     */
+    private static final Map<String, byte[]> reference = new HashMap<>();
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        renderer = new Renderer(new RenderContext.Builder().language("en").build());
+        for (String filter : FILTERS) reference.put(String.valueOf(filter), render(filter));
+    }
+
+    @Test
+    public void concurrentRendersAreIdentical() throws Exception {
+        int threads = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < threads * 3; i++) {
+                final String filter = FILTERS[i % FILTERS.length];
+                results.add(pool.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        start.await();
+                        return render(filter);
+                    }
+                }));
+            }
+            start.countDown();
+
+            for (int i = 0; i < results.size(); i++) {
+                String filter = String.valueOf(FILTERS[i % FILTERS.length]);
+                assertArrayEquals("Render " + i + " of " + filter, reference.get(filter), results.get(i).get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void bufferRenderIsIdentical() throws Exception {
+        ByteBuffer buffer = renderer.render(TreeFilter.parse("Explorer*"));
+        assertTrue(buffer.isReadOnly());
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertArrayEquals(reference.get("Explorer*"), normalize(bytes));
+    }
+
+    /**
+     * render selection
+     * @param filter filter or null for all trees
+     * @return normalized PDF
+     * @throws Exception
+     */
+    private static byte[] render(String filter) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        renderer.render(filter == null ? null : TreeFilter.parse(filter), out);
+        return normalize(out.toByteArray());
+    }
+
+    /**
+     * mask values created per document, keeping their length
+     * @param pdf PDF
+     * @return normalized PDF
+     * @throws Exception
+     */
+    private static byte[] normalize(byte[] pdf) throws Exception {
+        String s = new String(pdf, "ISO-8859-1");
+        s = mask(s, "/ID \\[<[0-9a-fA-F]+><[0-9a-fA-F]+>\\]");
+        s = mask(s, "\\(D:[0-9Z+\\-']+\\)");
+        s = mask(s, "/[A-Z]{6}\\+");
+        return s.getBytes("ISO-8859-1");
+    }
+
+    private static String mask(String s, String regex) {
+        Matcher matcher = Pattern.compile(regex).matcher(s);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            char[] masked = new char[matcher.group().length()];
+            Arrays.fill(masked, '#');
+            matcher.appendReplacement(sb, new String(masked));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+}
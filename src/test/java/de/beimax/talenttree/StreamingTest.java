@@ -0,0 +1,123 @@
+package de.beimax.talenttree;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kohsuke.args4j.CmdLineParser;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * PDF Generator for Star Wars Talent sheets
+ * (c) 2014 Maximilian Kalus [max_at_beimax_dot_de]
+ *
+ * This file is part of SWTalentTreeGenerator.
+ *
+ * SWTalentTreeGenerator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SWTalentTreeGenerator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SWTalentTreeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Renders a synthetic data file of 10,000 trees in streaming mode and checks that the heap retained does not grow with
+ * the number of pages rendered.
+ */
+public class StreamingTest {
+    private static final int TREES = 10000;
+
+    /**
+     * heap is measured every that many pages
+     */
+    private static final int SAMPLE_INTERVAL = 1000;
+
+    /**
+     * growth of retained heap allowed between first and last sample - the writer keeps about 200 bytes per page for the
+     * cross reference table (less than 2 MB for 9,000 pages), keeping each tree in memory would add another 13 MB
+     */
+    private static final long MAX_GROWTH = 8L * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void memoryIsBounded() throws Exception {
+        File dataFile = createDataFile(TREES);
+
+        PDFGenerator generator = new PDFGenerator();
+        new CmdLineParser(generator).parseArgument("--stream", "--data", dataFile.getPath(), "--lang", "en");
+        HeapSampler sampler = new HeapSampler();
+        generator.setOutputStream(sampler);
+        generator.setVerbose(false);
+        generator.initialize();
+        generator.generate();
+
+        assertTrue("pages flushed: " + sampler.flushes, sampler.flushes >= TREES);
+        assertEquals(TREES / SAMPLE_INTERVAL, sampler.samples.size());
+        long first = sampler.samples.get(0);
+        long max = 0;
+        for (long sample : sampler.samples) max = Math.max(max, sample);
+        assertTrue("retained heap grew by " + (max - first) / 1024 + " KB: " + sampler.samples, max - first < MAX_GROWTH);
+    }
+
+    /**
+     * create data file repeating the first tree of the bundled data
+     * @param count number of trees
+     * @return data file
+     * @throws IOException
+     */
+    private File createDataFile(int count) throws IOException {
+        StringBuilder tree = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/data.yaml"), "UTF-8"))) {
+            boolean inTree = false;
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.equals("---")) {
+                    if (inTree) break;
+                    inTree = true;
+                } else if (inTree && !line.startsWith("id:")) tree.append(line).append('\n');
+            }
+        }
+
+        File file = folder.newFile("synthetic.yaml");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+            for (int i = 0; i < count; i++)
+                writer.append("---\nid: Synthetic").append(String.valueOf(i)).append('\n').append(tree);
+        }
+        return file;
+    }
+
+    /**
+     * discards PDF, measuring heap used after garbage collection every SAMPLE_INTERVAL pages - the streaming writer
+     * flushes after each page
+     */
+    private static class HeapSampler extends OutputStream {
+        private final List<Long> samples = new ArrayList<>();
+        private int flushes = 0;
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+            if (++flushes % SAMPLE_INTERVAL != 0 || flushes > TREES) return;
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            samples.add(runtime.totalMemory() - runtime.freeMemory());
+        }
+    }
+}